@@ -0,0 +1,31 @@
+package io.github.ktrzaskoma.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class GtfsImportConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor gtfsImportExecutor(@Value("${gtfs.import.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("gtfs-import-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor gtfsJobExecutor() {
+        // A single import runs at a time so that imports cannot starve query traffic of connections,
+        // nothing is queued behind it, an upload sent while one is running is rejected
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("gtfs-job-");
+        return executor;
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.ktrzaskoma.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ScheduleQueryConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor scheduleQueryExecutor(@Value("${gtfs.batch.parallelism:4}") int parallelism,
+                                                        @Value("${gtfs.batch.queue-capacity:500}") int queueCapacity) {
+        // Bounded in threads and queue, when both are full further queries are rejected and reported as such. Running
+        // them on the request thread instead would put them outside of the pool and past the batch deadline.
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setThreadNamePrefix("schedule-query-");
+        return executor;
+    }
+}
@@ -1,34 +1,65 @@
 package io.github.ktrzaskoma.controller;
 
+import io.github.ktrzaskoma.dto.GtfsImportJobDto;
+import io.github.ktrzaskoma.dto.GtfsUploadDto;
+import io.github.ktrzaskoma.model.GtfsUpload;
 import io.github.ktrzaskoma.service.GtfsImportService;
+import io.github.ktrzaskoma.service.GtfsUploadService;
 import io.github.ktrzaskoma.event.MessageResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
 @RestController
 @RequestMapping("/gtfs")
 @RequiredArgsConstructor
 public class GtfsController {
 
     private final GtfsImportService gtfsImportService;
+    private final GtfsUploadService gtfsUploadService;
 
     @PostMapping("/upload")
-    public ResponseEntity<MessageResponse> uploadGtfs(
+    public ResponseEntity<?> uploadGtfs(
             @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "mode", defaultValue = "FULL") GtfsUpload.ImportMode mode,
             @RequestHeader("X-User-Id") Long userId,
-            @RequestHeader("X-User-Role") String userRole) {
+            @RequestHeader("X-User-Role") String userRole) throws IOException {
 
         if (!"ADMIN".equals(userRole)) {
-            return ResponseEntity.status(403).body(new MessageResponse("Access denied"));
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new MessageResponse("Access denied"));
         }
 
-        try {
-            gtfsImportService.importGtfsData(file, userId);
-            return ResponseEntity.ok(new MessageResponse("GTFS data imported successfully"));
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(new MessageResponse("Error importing GTFS data: " + e.getMessage()));
+        GtfsImportJobDto job = gtfsImportService.submitImport(file, userId, mode);
+        return ResponseEntity.accepted()
+                .location(URI.create("/gtfs/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<GtfsImportJobDto> getImportJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(gtfsImportService.getImportJob(jobId));
+    }
+
+    @GetMapping("/uploads")
+    public ResponseEntity<List<GtfsUploadDto>> getUploads() {
+        return ResponseEntity.ok(gtfsUploadService.getUploads());
+    }
+
+    @PostMapping("/uploads/{uploadId}/activate")
+    public ResponseEntity<?> activateUpload(
+            @PathVariable Long uploadId,
+            @RequestHeader("X-User-Role") String userRole) {
+
+        if (!"ADMIN".equals(userRole)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new MessageResponse("Access denied"));
         }
+
+        return ResponseEntity.ok(gtfsUploadService.activateUpload(uploadId));
     }
 }
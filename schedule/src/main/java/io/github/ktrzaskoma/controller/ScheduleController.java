@@ -1,12 +1,28 @@
 package io.github.ktrzaskoma.controller;
 
+import io.github.ktrzaskoma.dto.ConnectionBatchResultDto;
 import io.github.ktrzaskoma.dto.ConnectionDto;
-import io.github.ktrzaskoma.service.ScheduleService;
+import io.github.ktrzaskoma.dto.ConnectionQueryDto;
+import io.github.ktrzaskoma.dto.DepartureDto;
+import io.github.ktrzaskoma.dto.JourneyDto;
+import io.github.ktrzaskoma.dto.NearbyStopDto;
 import io.github.ktrzaskoma.dto.StopDto;
+import io.github.ktrzaskoma.dto.TripDto;
+import io.github.ktrzaskoma.service.ConnectionBatchService;
+import io.github.ktrzaskoma.service.ScheduleService;
+import io.github.ktrzaskoma.service.StopCatalogueService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,10 +37,76 @@ import java.util.List;
 public class ScheduleController {
 
     private final ScheduleService scheduleService;
+    private final StopCatalogueService stopCatalogueService;
+    private final ConnectionBatchService connectionBatchService;
 
     @GetMapping("/stops")
-    public ResponseEntity<List<StopDto>> getAllStops() {
-        return ResponseEntity.ok(scheduleService.getAllActiveStops());
+    public ResponseEntity<byte[]> getAllStops(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        StopCatalogueService.StopCatalogue catalogue = stopCatalogueService.current();
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(gzip ? catalogue.gzipEtag() : catalogue.etag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (catalogue.isNotModified(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(response.build().getHeaders())
+                    .build();
+        }
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.contentType(MediaType.APPLICATION_JSON).body(gzip ? catalogue.gzip() : catalogue.json());
+    }
+
+    @GetMapping("/stops/nearby")
+    public ResponseEntity<List<NearbyStopDto>> findNearbyStops(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "1000") double radius,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(scheduleService.findNearbyStops(lat, lon, radius, limit));
+    }
+
+    @GetMapping("/stops/search")
+    public ResponseEntity<List<StopDto>> searchStops(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(scheduleService.searchStops(query, limit));
+    }
+
+    @GetMapping("/stops/bbox")
+    public ResponseEntity<List<StopDto>> findStopsInBox(
+            @RequestParam double minLat,
+            @RequestParam double minLon,
+            @RequestParam double maxLat,
+            @RequestParam double maxLon) {
+        return ResponseEntity.ok(scheduleService.findStopsInBox(minLat, minLon, maxLat, maxLon));
+    }
+
+    @GetMapping("/stops/{stopId}/departures")
+    public ResponseEntity<List<DepartureDto>> getDepartures(
+            @PathVariable String stopId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime time,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        if (date == null) {
+            date = LocalDate.now();
+        }
+        if (time == null) {
+            time = LocalTime.now();
+        }
+
+        return ResponseEntity.ok(scheduleService.getDepartures(stopId, date, time, limit));
+    }
+
+    @GetMapping("/trips/{tripId}")
+    public ResponseEntity<TripDto> getTrip(@PathVariable String tripId) {
+        return ResponseEntity.ok(scheduleService.getTrip(tripId));
     }
 
     @GetMapping("/connections")
@@ -43,4 +125,45 @@ public class ScheduleController {
 
         return ResponseEntity.ok(scheduleService.findConnections(fromStopId, toStopId, date, time));
     }
+
+    @PostMapping("/connections/batch")
+    public ResponseEntity<List<ConnectionBatchResultDto>> findConnectionsBatch(
+            @RequestBody List<ConnectionQueryDto> queries) {
+        return ResponseEntity.ok(connectionBatchService.findConnections(queries));
+    }
+
+    @GetMapping("/connections/range")
+    public ResponseEntity<List<JourneyDto>> findConnectionsInRange(
+            @RequestParam String fromStopId,
+            @RequestParam String toStopId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime startTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime endTime,
+            @RequestParam(defaultValue = "2") int maxTransfers) {
+
+        if (date == null) {
+            date = LocalDate.now();
+        }
+
+        return ResponseEntity.ok(scheduleService.findJourneysInRange(fromStopId, toStopId, date, startTime, endTime,
+                maxTransfers));
+    }
+
+    @GetMapping("/journeys")
+    public ResponseEntity<List<JourneyDto>> findJourneys(
+            @RequestParam String fromStopId,
+            @RequestParam String toStopId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) LocalTime time,
+            @RequestParam(defaultValue = "2") int maxTransfers) {
+
+        if (date == null) {
+            date = LocalDate.now();
+        }
+        if (time == null) {
+            time = LocalTime.now();
+        }
+
+        return ResponseEntity.ok(scheduleService.findJourneys(fromStopId, toStopId, date, time, maxTransfers));
+    }
 }
@@ -0,0 +1,31 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConnectionBatchResultDto {
+    private String fromStopId;
+    private String toStopId;
+    private LocalDate date;
+    private LocalTime time;
+    private Status status;
+    private List<ConnectionDto> connections;
+    private String message;
+
+    public enum Status {
+        OK,
+        TIMED_OUT,
+        REJECTED,
+        FAILED
+    }
+}
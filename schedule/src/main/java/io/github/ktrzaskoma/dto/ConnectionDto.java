@@ -21,4 +21,16 @@ public class ConnectionDto {
     private LocalTime arrivalTime;
     private Integer wheelchairAccessible;
     private Integer bikesAllowed;
+
+    // Used by queries that select the stored service day seconds, which are shown as the time of day
+    public ConnectionDto(String tripId, String routeShortName, String routeLongName, String fromStopName,
+                         String toStopName, Integer departureSeconds, Integer arrivalSeconds,
+                         Integer wheelchairAccessible, Integer bikesAllowed) {
+        this(tripId, routeShortName, routeLongName, fromStopName, toStopName, timeOfDay(departureSeconds),
+                timeOfDay(arrivalSeconds), wheelchairAccessible, bikesAllowed);
+    }
+
+    private static LocalTime timeOfDay(Integer seconds) {
+        return seconds != null ? LocalTime.ofSecondOfDay(seconds % (24 * 3600)) : null;
+    }
 }
@@ -0,0 +1,20 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConnectionQueryDto {
+    private String fromStopId;
+    private String toStopId;
+    private LocalDate date;
+    private LocalTime time;
+}
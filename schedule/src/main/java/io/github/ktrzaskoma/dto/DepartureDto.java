@@ -0,0 +1,22 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DepartureDto {
+    private String tripId;
+    private String routeShortName;
+    private String routeLongName;
+    private String headsign;
+    private LocalTime departureTime;
+    private Integer wheelchairAccessible;
+    private Integer bikesAllowed;
+}
@@ -0,0 +1,28 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GtfsImportJobDto {
+    private String jobId;
+    private String filename;
+    private String status;
+    private List<String> activeFiles;
+    private Map<String, Long> rowsProcessed;
+    private Long rowsPerSecond;
+    private Long uploadId;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String message;
+}
@@ -0,0 +1,23 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GtfsUploadDto {
+    private Long id;
+    private String filename;
+    private Long uploadedBy;
+    private LocalDateTime uploadDate;
+    private LocalDateTime activatedAt;
+    private String status;
+    private Boolean isActive;
+    private String archiveSha256;
+}
@@ -0,0 +1,20 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JourneyDto {
+    private LocalTime departureTime;
+    private LocalTime arrivalTime;
+    private Integer transfers;
+    private List<JourneyLegDto> legs;
+}
@@ -0,0 +1,30 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JourneyLegDto {
+    private LegMode mode;
+    private String tripId;
+    private String routeShortName;
+    private String routeLongName;
+    private String tripHeadsign;
+    private String fromStopId;
+    private String fromStopName;
+    private String toStopId;
+    private String toStopName;
+    private LocalTime departureTime;
+    private LocalTime arrivalTime;
+
+    public enum LegMode {
+        TRANSIT, WALK
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.ktrzaskoma.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TripDto {
+    private String tripId;
+    private String routeShortName;
+    private String routeLongName;
+    private String headsign;
+    private Integer wheelchairAccessible;
+    private Integer bikesAllowed;
+    private List<TripStopDto> stops;
+}
@@ -0,0 +1,5 @@
+package io.github.ktrzaskoma.event;
+
+// Published when the active upload changes, listeners see it once the switch has been committed
+public record UploadActivatedEvent(Long uploadId) {
+}
@@ -12,6 +12,28 @@ import org.springframework.web.multipart.MaxUploadSizeExceededException;
 @RestControllerAdvice
 @Slf4j
 public class GlobalExceptionHandler {
+    @ExceptionHandler({ImportJobNotFoundException.class, UploadNotFoundException.class, StopNotFoundException.class,
+            TripNotFoundException.class})
+    public ResponseEntity<MessageResponse> handleNotFoundException(RuntimeException e) {
+        log.error("Not found: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    @ExceptionHandler(ImportRejectedException.class)
+    public ResponseEntity<MessageResponse> handleImportRejectedException(ImportRejectedException e) {
+        log.error("Import rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
+    @ExceptionHandler(TimetableUnavailableException.class)
+    public ResponseEntity<MessageResponse> handleTimetableUnavailableException(TimetableUnavailableException e) {
+        log.warn("Timetable unavailable: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new MessageResponse(e.getMessage()));
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<MessageResponse> handleIllegalArgumentException(IllegalArgumentException e) {
         log.error("Illegal argument: {}", e.getMessage());
@@ -30,7 +52,7 @@ public class GlobalExceptionHandler {
     public ResponseEntity<MessageResponse> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException e) {
         log.error("File too large: {}", e.getMessage());
         return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
-                .body(new MessageResponse("File size exceeds maximum allowed size (10MB)"));
+                .body(new MessageResponse("File size exceeds maximum allowed upload size"));
     }
 
     @ExceptionHandler(ConstraintViolationException.class)
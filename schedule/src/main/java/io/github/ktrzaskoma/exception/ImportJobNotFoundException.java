@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class ImportJobNotFoundException extends RuntimeException {
+    public ImportJobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class ImportRejectedException extends RuntimeException {
+    public ImportRejectedException(String message) {
+        super(message);
+    }
+}
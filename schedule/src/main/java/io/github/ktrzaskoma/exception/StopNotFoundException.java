@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class StopNotFoundException extends RuntimeException {
+    public StopNotFoundException(String message) {
+        super(message);
+    }
+}
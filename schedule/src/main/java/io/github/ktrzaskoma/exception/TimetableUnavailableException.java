@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class TimetableUnavailableException extends RuntimeException {
+    public TimetableUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class TripNotFoundException extends RuntimeException {
+    public TripNotFoundException(String message) {
+        super(message);
+    }
+}
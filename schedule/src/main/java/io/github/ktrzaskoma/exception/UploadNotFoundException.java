@@ -0,0 +1,7 @@
+package io.github.ktrzaskoma.exception;
+
+public class UploadNotFoundException extends RuntimeException {
+    public UploadNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "agency")
+@Table(name = "agency", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "agency_id"}))
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,7 +15,11 @@ import lombok.NoArgsConstructor;
 public class Agency {
 
     @Id
-    @Column(name = "agency_id", length = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "agency_seq")
+    @SequenceGenerator(name = "agency_seq", sequenceName = "agency_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "agency_id", length = 50, nullable = false)
     private String agencyId;
 
     @Column(name = "agency_name", nullable = false)
@@ -30,6 +34,12 @@ public class Agency {
     @Column(name = "agency_timezone", length = 50)
     private String agencyTimezone;
 
+    @Column(name = "row_hash")
+    private Long rowHash;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
     @ManyToOne
     @JoinColumn(name = "upload_id")
     private GtfsUpload upload;
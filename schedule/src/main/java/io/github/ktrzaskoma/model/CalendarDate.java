@@ -18,7 +18,8 @@ import java.time.LocalDate;
 public class CalendarDate {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "calendar_dates_seq")
+    @SequenceGenerator(name = "calendar_dates_seq", sequenceName = "calendar_dates_seq", allocationSize = 1000)
     private Long id;
 
     @Column(name = "service_id", length = 50)
@@ -30,6 +31,9 @@ public class CalendarDate {
     @Column(name = "exception_type")
     private Integer exceptionType;
 
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
     @ManyToOne
     @JoinColumn(name = "upload_id")
     private GtfsUpload upload;
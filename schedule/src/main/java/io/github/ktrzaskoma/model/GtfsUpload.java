@@ -9,7 +9,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "gtfs_uploads")
+@Table(name = "gtfs_uploads", indexes = {
+        @Index(name = "idx_gtfs_uploads_archive_sha256", columnList = "archive_sha256"),
+        @Index(name = "idx_gtfs_uploads_content_sha256", columnList = "content_sha256")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -32,11 +35,56 @@ public class GtfsUpload {
     @Column(name = "is_active")
     private Boolean isActive;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20)
+    private UploadStatus status;
+
+    @Column(name = "activated_at")
+    private LocalDateTime activatedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "import_mode", length = 20)
+    private ImportMode importMode;
+
+    // Upload a differential import was compared against, its unchanged rows are shared instead of copied
+    @Column(name = "base_upload_id")
+    private Long baseUploadId;
+
+    // SHA-256 of the uploaded archive and of its files, used to recognise a feed that was imported before
+    @Column(name = "archive_sha256", length = 64)
+    private String archiveSha256;
+
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
+    // One line per GTFS file, unbounded so that feeds split into many files still fit
+    @Lob
+    @Column(name = "entry_sha256")
+    private String entrySha256;
+
+    // Set once the rows of a PURGED or FAILED upload are gone, the upload itself is kept as history
+    @Column(name = "purged_at")
+    private LocalDateTime purgedAt;
+
     @PrePersist
     protected void onCreate() {
         uploadDate = LocalDateTime.now();
         if (isActive == null) {
             isActive = false;
         }
+        if (status == null) {
+            status = UploadStatus.LOADING;
+        }
+        if (importMode == null) {
+            importMode = ImportMode.FULL;
+        }
+    }
+
+    public enum UploadStatus {
+        LOADING, READY, FAILED, PURGED
+    }
+
+    public enum ImportMode {
+        FULL, DIFF
     }
 }
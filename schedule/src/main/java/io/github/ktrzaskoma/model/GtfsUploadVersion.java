@@ -0,0 +1,29 @@
+package io.github.ktrzaskoma.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Lists the uploads whose rows make up a timetable version: a full import only
+// contains itself, a differential import adds itself to the chain of its base
+@Entity
+@Table(name = "gtfs_upload_versions", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "version_id"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GtfsUploadVersion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "upload_id", nullable = false)
+    private GtfsUpload upload;
+
+    @Column(name = "version_id", nullable = false)
+    private Long versionId;
+}
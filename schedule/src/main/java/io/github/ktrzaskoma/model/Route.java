@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "routes")
+@Table(name = "routes", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "route_id"}))
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,11 +15,15 @@ import lombok.NoArgsConstructor;
 public class Route {
 
     @Id
-    @Column(name = "route_id", length = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "routes_seq")
+    @SequenceGenerator(name = "routes_seq", sequenceName = "routes_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "route_id", length = 50, nullable = false)
     private String routeId;
 
     @ManyToOne
-    @JoinColumn(name = "agency_id")
+    @JoinColumn(name = "agency_pk")
     private Agency agency;
 
     @Column(name = "route_short_name", length = 50)
@@ -37,6 +41,12 @@ public class Route {
     @Column(name = "route_text_color", length = 10)
     private String routeTextColor;
 
+    @Column(name = "row_hash")
+    private Long rowHash;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
     @ManyToOne
     @JoinColumn(name = "upload_id")
     private GtfsUpload upload;
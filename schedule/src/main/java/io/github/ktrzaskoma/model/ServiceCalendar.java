@@ -0,0 +1,40 @@
+package io.github.ktrzaskoma.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// The days one service runs on in an upload, compiled from calendar.txt and calendar_dates.txt of the whole
+// version chain. Bit d of days stands for firstDate + d, so a year of service takes 46 bytes instead of one
+// calendar date row per day. Written once before the upload is activated and deleted with it.
+@Entity
+@Table(name = "service_calendars", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "service_id"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServiceCalendar {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "service_calendars_seq")
+    @SequenceGenerator(name = "service_calendars_seq", sequenceName = "service_calendars_seq", allocationSize = 1000)
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "upload_id", nullable = false)
+    private GtfsUpload upload;
+
+    @Column(name = "service_id", length = 50, nullable = false)
+    private String serviceId;
+
+    @Column(name = "first_date", nullable = false)
+    private LocalDate firstDate;
+
+    // Long enough for decades of daily service
+    @Column(name = "days", length = 4096, nullable = false)
+    private byte[] days;
+}
@@ -9,7 +9,7 @@ import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "stops")
+@Table(name = "stops", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "stop_id"}))
 @Data
 @Builder
 @NoArgsConstructor
@@ -17,7 +17,11 @@ import java.math.BigDecimal;
 public class Stop {
 
     @Id
-    @Column(name = "stop_id", length = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stops_seq")
+    @SequenceGenerator(name = "stops_seq", sequenceName = "stops_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "stop_id", length = 50, nullable = false)
     private String stopId;
 
     @Column(name = "stop_name", nullable = false)
@@ -32,6 +36,12 @@ public class Stop {
     @Column(name = "wheelchair_boarding")
     private Integer wheelchairBoarding;
 
+    @Column(name = "row_hash")
+    private Long rowHash;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
     @ManyToOne
     @JoinColumn(name = "upload_id")
     private GtfsUpload upload;
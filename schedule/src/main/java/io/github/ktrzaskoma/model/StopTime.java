@@ -6,10 +6,13 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.time.LocalTime;
-
+// Trips and stops are referenced by their surrogate keys, the GTFS ids are only kept on their own tables. Both
+// indexes are on integer columns only: departures of a stop by time, and the stops of a trip in sequence.
 @Entity
-@Table(name = "stop_times")
+@Table(name = "stop_times", indexes = {
+        @Index(name = "idx_stop_times_stop_departure", columnList = "stop_pk, departure_time"),
+        @Index(name = "idx_stop_times_trip_sequence", columnList = "trip_pk, stop_sequence")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -17,25 +20,30 @@ import java.time.LocalTime;
 public class StopTime {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stop_times_seq")
+    @SequenceGenerator(name = "stop_times_seq", sequenceName = "stop_times_seq", allocationSize = 1000)
     private Long id;
 
     @ManyToOne
-    @JoinColumn(name = "trip_id")
+    @JoinColumn(name = "trip_pk")
     private Trip trip;
 
     @ManyToOne
-    @JoinColumn(name = "stop_id")
+    @JoinColumn(name = "stop_pk")
     private Stop stop;
 
     @Column(name = "stop_sequence")
     private Integer stopSequence;
 
+    // Seconds since noon minus 12h of the service day, beyond 24:00 for stops served after midnight
     @Column(name = "arrival_time")
-    private LocalTime arrivalTime;
+    private Integer arrivalTime;
 
     @Column(name = "departure_time")
-    private LocalTime departureTime;
+    private Integer departureTime;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
 
     @ManyToOne
     @JoinColumn(name = "upload_id")
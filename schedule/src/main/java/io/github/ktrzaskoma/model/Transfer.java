@@ -0,0 +1,41 @@
+package io.github.ktrzaskoma.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Rows of the optional transfers.txt. Stops are kept as GTFS ids, they are resolved when the timetable is built.
+@Entity
+@Table(name = "transfers")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Transfer {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfers_seq")
+    @SequenceGenerator(name = "transfers_seq", sequenceName = "transfers_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "from_stop_id", length = 50, nullable = false)
+    private String fromStopId;
+
+    @Column(name = "to_stop_id", length = 50, nullable = false)
+    private String toStopId;
+
+    @Column(name = "transfer_type")
+    private Integer transferType;
+
+    @Column(name = "min_transfer_time")
+    private Integer minTransferTime;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
+    @ManyToOne
+    @JoinColumn(name = "upload_id")
+    private GtfsUpload upload;
+}
@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "trips")
+@Table(name = "trips", uniqueConstraints = @UniqueConstraint(columnNames = {"upload_id", "trip_id"}))
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,11 +15,15 @@ import lombok.NoArgsConstructor;
 public class Trip {
 
     @Id
-    @Column(name = "trip_id", length = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trips_seq")
+    @SequenceGenerator(name = "trips_seq", sequenceName = "trips_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "trip_id", length = 50, nullable = false)
     private String tripId;
 
     @ManyToOne
-    @JoinColumn(name = "route_id")
+    @JoinColumn(name = "route_pk")
     private Route route;
 
     @Column(name = "service_id", length = 50)
@@ -43,6 +47,18 @@ public class Trip {
     @Column(name = "bikes_allowed")
     private Integer bikesAllowed;
 
+    // Hash of the parsed row, compared by differential imports to detect changes
+    @Column(name = "row_hash")
+    private Long rowHash;
+
+    // Order independent sum of the hashes of this trip's stop times
+    @Column(name = "stop_times_hash")
+    private Long stopTimesHash;
+
+    // Upload whose differential import replaced or removed this row
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
     @ManyToOne
     @JoinColumn(name = "upload_id")
     private GtfsUpload upload;
@@ -0,0 +1,44 @@
+package io.github.ktrzaskoma.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Rows of the optional calendar.txt. The seven day columns are kept as one mask, bit 0 for Monday to bit 6 for
+// Sunday, they are only ever read together when the service calendars are compiled.
+@Entity
+@Table(name = "calendars")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeeklyCalendar {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "calendars_seq")
+    @SequenceGenerator(name = "calendars_seq", sequenceName = "calendars_seq", allocationSize = 1000)
+    private Long id;
+
+    @Column(name = "service_id", length = 50, nullable = false)
+    private String serviceId;
+
+    @Column(name = "weekdays", nullable = false)
+    private Integer weekdays;
+
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;
+
+    @Column(name = "end_date", nullable = false)
+    private LocalDate endDate;
+
+    @Column(name = "retired_by")
+    private Long retiredBy;
+
+    @ManyToOne
+    @JoinColumn(name = "upload_id")
+    private GtfsUpload upload;
+}
@@ -2,8 +2,33 @@ package io.github.ktrzaskoma.repository;
 
 import io.github.ktrzaskoma.model.Agency;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface AgencyRepository extends JpaRepository<Agency, String> {
+public interface AgencyRepository extends JpaRepository<Agency, Long> {
+
+    @Query("""
+        SELECT new io.github.ktrzaskoma.repository.GtfsRowState(a.agencyId, a.id, a.rowHash)
+        FROM Agency a
+        WHERE a.upload.id IN :versionIds AND a.retiredBy IS NULL
+        """)
+    List<GtfsRowState> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE Agency a SET a.retiredBy = :uploadId WHERE a.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE Agency a SET a.retiredBy = NULL WHERE a.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM Agency a WHERE a.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
 }
@@ -2,11 +2,36 @@ package io.github.ktrzaskoma.repository;
 
 import io.github.ktrzaskoma.model.CalendarDate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface CalendarDateRepository extends JpaRepository<CalendarDate, Long> {
 
+    @Query("""
+        SELECT COUNT(cd) FROM CalendarDate cd
+        WHERE cd.upload.id IN :versionIds
+        AND (cd.retiredBy IS NULL OR cd.retiredBy NOT IN :versionIds)
+        """)
+    long countVisible(@Param("versionIds") Collection<Long> versionIds);
 
-}
+    @Query("SELECT cd FROM CalendarDate cd WHERE cd.upload.id IN :versionIds AND cd.retiredBy IS NULL")
+    List<CalendarDate> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE CalendarDate cd SET cd.retiredBy = :uploadId WHERE cd.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
 
+    @Modifying
+    @Query("UPDATE CalendarDate cd SET cd.retiredBy = NULL WHERE cd.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM CalendarDate cd WHERE cd.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
+}
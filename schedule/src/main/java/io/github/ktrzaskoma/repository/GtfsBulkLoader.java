@@ -0,0 +1,150 @@
+package io.github.ktrzaskoma.repository;
+
+import io.github.ktrzaskoma.model.CalendarDate;
+import io.github.ktrzaskoma.model.StopTime;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class GtfsBulkLoader {
+
+    // Must match allocationSize of the entity sequences, ids are handed out with pooled-lo semantics
+    private static final int ID_BLOCK_SIZE = 1000;
+
+    private static final String INSERT_STOP_TIME = """
+            INSERT INTO stop_times (id, trip_pk, stop_pk, stop_sequence, arrival_time, departure_time, upload_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_CALENDAR_DATE = """
+            INSERT INTO calendar_dates (id, service_id, date, exception_type, upload_id)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final String UPDATE_STOP_TIMES_HASH = "UPDATE trips SET stop_times_hash = ? WHERE id = ?";
+
+    // Tables holding per upload rows, referencing tables come before the tables they point to
+    public static final List<String> UPLOAD_TABLES = List.of(
+            "stop_times", "calendars", "calendar_dates", "transfers", "trips", "routes", "stops", "agency");
+
+    // Tables computed from the rows of an upload, they are never retired and go away with the upload
+    public static final List<String> DERIVED_TABLES = List.of("service_calendars");
+
+    // Old uploads are removed a bounded number of rows per statement, so no transaction holds many row locks
+    private static final String DELETE_UPLOAD_ROWS =
+            "DELETE FROM %1$s WHERE id IN (SELECT id FROM %1$s WHERE upload_id = ? FETCH FIRST ? ROWS ONLY)";
+
+    private static final String RESTORE_RETIRED_ROWS =
+            "UPDATE %1$s SET retired_by = NULL WHERE id IN (SELECT id FROM %1$s WHERE retired_by = ? FETCH FIRST ? ROWS ONLY)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+
+    public GtfsBulkLoader(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    public void insertStopTimes(List<StopTime> stopTimes) {
+        long[] ids = allocateIds("stop_times_seq", stopTimes.size());
+        jdbcTemplate.batchUpdate(INSERT_STOP_TIME, batch(stopTimes.size(), (ps, row) -> {
+            StopTime stopTime = stopTimes.get(row);
+            ps.setLong(1, ids[row]);
+            ps.setLong(2, stopTime.getTrip().getId());
+            ps.setLong(3, stopTime.getStop().getId());
+            setInteger(ps, 4, stopTime.getStopSequence());
+            setInteger(ps, 5, stopTime.getArrivalTime());
+            setInteger(ps, 6, stopTime.getDepartureTime());
+            ps.setLong(7, stopTime.getUpload().getId());
+        }));
+    }
+
+    public void insertCalendarDates(List<CalendarDate> calendarDates) {
+        long[] ids = allocateIds("calendar_dates_seq", calendarDates.size());
+        jdbcTemplate.batchUpdate(INSERT_CALENDAR_DATE, batch(calendarDates.size(), (ps, row) -> {
+            CalendarDate calendarDate = calendarDates.get(row);
+            ps.setLong(1, ids[row]);
+            ps.setString(2, calendarDate.getServiceId());
+            ps.setDate(3, calendarDate.getDate() != null ? Date.valueOf(calendarDate.getDate()) : null);
+            setInteger(ps, 4, calendarDate.getExceptionType());
+            ps.setLong(5, calendarDate.getUpload().getId());
+        }));
+    }
+
+    public void updateStopTimesHashes(Map<Long, Long> hashesByTripId) {
+        List<Map.Entry<Long, Long>> entries = List.copyOf(hashesByTripId.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_STOP_TIMES_HASH, batch(entries.size(), (ps, row) -> {
+            ps.setLong(1, entries.get(row).getValue());
+            ps.setLong(2, entries.get(row).getKey());
+        }));
+    }
+
+    public int deleteUploadRows(String table, long uploadId, int limit) {
+        if (!DERIVED_TABLES.contains(table)) {
+            table = uploadTable(table);
+        }
+        return jdbcTemplate.update(DELETE_UPLOAD_ROWS.formatted(table), uploadId, limit);
+    }
+
+    public int restoreRetiredRows(String table, long uploadId, int limit) {
+        return jdbcTemplate.update(RESTORE_RETIRED_ROWS.formatted(uploadTable(table)), uploadId, limit);
+    }
+
+    private String uploadTable(String table) {
+        if (!UPLOAD_TABLES.contains(table)) {
+            throw new IllegalArgumentException("Not an upload table: " + table);
+        }
+        return table;
+    }
+
+    private long[] allocateIds(String sequenceName, int count) {
+        String nextValue = dialect.getSequenceSupport().getSequenceNextValString(sequenceName);
+        long[] ids = new long[count];
+        int assigned = 0;
+        while (assigned < count) {
+            long blockStart = jdbcTemplate.queryForObject(nextValue, Long.class);
+            for (int i = 0; i < ID_BLOCK_SIZE && assigned < count; i++) {
+                ids[assigned++] = blockStart + i;
+            }
+        }
+        return ids;
+    }
+
+    private BatchPreparedStatementSetter batch(int size, RowBinder binder) {
+        return new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                binder.bind(ps, i);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        };
+    }
+
+    private void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement ps, int row) throws SQLException;
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.ktrzaskoma.repository;
+
+// Key, surrogate id and hashes of a row that is current in a timetable version
+public record GtfsRowState(String gtfsId, Long id, Long rowHash, Long stopTimesHash) {
+
+    public GtfsRowState(String gtfsId, Long id, Long rowHash) {
+        this(gtfsId, id, rowHash, null);
+    }
+}
@@ -1,12 +1,55 @@
 package io.github.ktrzaskoma.repository;
 
 import io.github.ktrzaskoma.model.GtfsUpload;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface GtfsUploadRepository extends JpaRepository<GtfsUpload, Long> {
     Optional<GtfsUpload> findByIsActiveTrue();
+
+    // Taken by the purge, so an upload cannot be switched to while its rows are deleted
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM GtfsUpload u WHERE u.id = :uploadId")
+    Optional<GtfsUpload> findForUpdate(@Param("uploadId") Long uploadId);
+
+    // Taken by activation. The active upload and every one that can become active are READY, so two activations
+    // both lock the target of the other and run one after the other. The id order keeps them from deadlocking.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        SELECT u FROM GtfsUpload u
+        WHERE u.status = io.github.ktrzaskoma.model.GtfsUpload.UploadStatus.READY
+        ORDER BY u.id
+        """)
+    List<GtfsUpload> findReadyForUpdate();
+
+    List<GtfsUpload> findAllByOrderByUploadDateDesc();
+
+    Optional<GtfsUpload> findFirstByArchiveSha256AndStatusOrderByUploadDateDesc(String archiveSha256,
+                                                                               GtfsUpload.UploadStatus status);
+
+    Optional<GtfsUpload> findFirstByContentSha256AndStatusOrderByUploadDateDesc(String contentSha256,
+                                                                               GtfsUpload.UploadStatus status);
+
+    List<GtfsUpload> findByStatusOrderByUploadDateDesc(GtfsUpload.UploadStatus status);
+
+    List<GtfsUpload> findByStatusAndPurgedAtIsNull(GtfsUpload.UploadStatus status);
+
+    // A purge that has not finished yet may still have rows of the base marked as retired
+    @Query("""
+        SELECT COUNT(u) > 0 FROM GtfsUpload u
+        WHERE u.baseUploadId = :uploadId
+        AND (u.status IN (io.github.ktrzaskoma.model.GtfsUpload.UploadStatus.LOADING,
+                          io.github.ktrzaskoma.model.GtfsUpload.UploadStatus.READY)
+             OR (u.status IN (io.github.ktrzaskoma.model.GtfsUpload.UploadStatus.PURGED,
+                              io.github.ktrzaskoma.model.GtfsUpload.UploadStatus.FAILED) AND u.purgedAt IS NULL))
+        """)
+    boolean hasNewerVersion(@Param("uploadId") Long uploadId);
 }
@@ -0,0 +1,24 @@
+package io.github.ktrzaskoma.repository;
+
+import io.github.ktrzaskoma.model.GtfsUploadVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface GtfsUploadVersionRepository extends JpaRepository<GtfsUploadVersion, Long> {
+    @Query("SELECT v.versionId FROM GtfsUploadVersion v WHERE v.upload.id = :uploadId")
+    List<Long> findVersionIds(@Param("uploadId") Long uploadId);
+
+    @Query("SELECT DISTINCT v.versionId FROM GtfsUploadVersion v WHERE v.upload.id IN :uploadIds")
+    List<Long> findVersionIdsOf(@Param("uploadIds") Collection<Long> uploadIds);
+
+    @Modifying
+    @Query("DELETE FROM GtfsUploadVersion v WHERE v.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
+}
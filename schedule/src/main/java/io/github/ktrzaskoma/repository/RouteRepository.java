@@ -2,8 +2,33 @@ package io.github.ktrzaskoma.repository;
 
 import io.github.ktrzaskoma.model.Route;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface RouteRepository extends JpaRepository<Route, String> {
+public interface RouteRepository extends JpaRepository<Route, Long> {
+
+    @Query("""
+        SELECT new io.github.ktrzaskoma.repository.GtfsRowState(r.routeId, r.id, r.rowHash)
+        FROM Route r
+        WHERE r.upload.id IN :versionIds AND r.retiredBy IS NULL
+        """)
+    List<GtfsRowState> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE Route r SET r.retiredBy = :uploadId WHERE r.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE Route r SET r.retiredBy = NULL WHERE r.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM Route r WHERE r.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
 }
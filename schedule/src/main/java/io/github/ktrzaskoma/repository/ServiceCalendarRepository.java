@@ -0,0 +1,21 @@
+package io.github.ktrzaskoma.repository;
+
+import io.github.ktrzaskoma.model.ServiceCalendar;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ServiceCalendarRepository extends JpaRepository<ServiceCalendar, Long> {
+
+    @Query("SELECT sc FROM ServiceCalendar sc WHERE sc.upload.id = :uploadId")
+    List<ServiceCalendar> findByUploadId(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM ServiceCalendar sc WHERE sc.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
+}
@@ -1,12 +1,50 @@
 package io.github.ktrzaskoma.repository;
 
+import io.github.ktrzaskoma.dto.StopDto;
 import io.github.ktrzaskoma.model.Stop;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface StopRepository extends JpaRepository<Stop, String> {
-    List<Stop> findByUploadIsActiveTrue();
+public interface StopRepository extends JpaRepository<Stop, Long> {
+    @Query("""
+        SELECT new io.github.ktrzaskoma.dto.StopDto(s.stopId, s.stopName, s.stopLat, s.stopLon, s.wheelchairBoarding)
+        FROM Stop s
+        WHERE s.upload.id IN :versionIds
+        AND (s.retiredBy IS NULL OR s.retiredBy NOT IN :versionIds)
+        ORDER BY s.stopId
+        """)
+    List<StopDto> findVisibleStopDtos(@Param("versionIds") Collection<Long> versionIds);
+
+    @Query("""
+        SELECT COUNT(s) FROM Stop s
+        WHERE s.upload.id IN :versionIds
+        AND (s.retiredBy IS NULL OR s.retiredBy NOT IN :versionIds)
+        """)
+    long countVisible(@Param("versionIds") Collection<Long> versionIds);
+
+    @Query("""
+        SELECT new io.github.ktrzaskoma.repository.GtfsRowState(s.stopId, s.id, s.rowHash)
+        FROM Stop s
+        WHERE s.upload.id IN :versionIds AND s.retiredBy IS NULL
+        """)
+    List<GtfsRowState> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE Stop s SET s.retiredBy = :uploadId WHERE s.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE Stop s SET s.retiredBy = NULL WHERE s.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM Stop s WHERE s.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
 }
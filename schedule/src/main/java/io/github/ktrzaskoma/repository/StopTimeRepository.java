@@ -1,61 +1,87 @@
 package io.github.ktrzaskoma.repository;
 
+import io.github.ktrzaskoma.dto.ConnectionDto;
 import io.github.ktrzaskoma.model.StopTime;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
-import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface StopTimeRepository extends JpaRepository<StopTime, Long> {
 
+    // Departure and arrival of a trip as one row, so a whole answer is a single statement. The version chain of the
+    // active upload and the services running on the travel date and on the day before are resolved beforehand.
+    // Trips of the day before only count from midnight on, with their times shifted onto the travel date, and
+    // come after the travel date's own trips leaving at the same time.
     @Query("""
-        SELECT DISTINCT st FROM StopTime st
-        JOIN FETCH st.trip t
-        JOIN FETCH t.route r
-        JOIN FETCH st.stop s
-        WHERE st.stop.stopId = :fromStopId
-        AND st.departureTime >= :departureTime
-        AND st.upload.isActive = true
-        AND EXISTS (
-            SELECT 1 FROM StopTime st2
-            WHERE st2.trip = t
-            AND st2.stop.stopId = :toStopId
-            AND st2.stopSequence > st.stopSequence
-        )
-        AND EXISTS (
-            SELECT 1 FROM CalendarDate cd
-            WHERE cd.serviceId = t.serviceId
-            AND cd.date = :travelDate
-            AND cd.exceptionType = 1
-            AND cd.upload.isActive = true
-        )
-        ORDER BY st.departureTime
-        LIMIT 20
+        SELECT new io.github.ktrzaskoma.dto.ConnectionDto(
+            c.tripId, c.routeShortName, c.routeLongName, c.fromStopName, c.toStopName,
+            c.departureTime, c.arrivalTime, c.wheelchairAccessible, c.bikesAllowed)
+        FROM (
+            SELECT t.tripId AS tripId, r.routeShortName AS routeShortName, r.routeLongName AS routeLongName,
+                fs.stopName AS fromStopName, ts.stopName AS toStopName, dep.departureTime AS departureTime,
+                arr.arrivalTime AS arrivalTime, t.wheelchairAccessible AS wheelchairAccessible,
+                t.bikesAllowed AS bikesAllowed, 0 AS previousDay
+            FROM StopTime dep
+            JOIN dep.trip t
+            JOIN t.route r
+            JOIN dep.stop fs
+            JOIN StopTime arr ON arr.trip = t AND arr.stopSequence > dep.stopSequence
+            JOIN arr.stop ts
+            WHERE fs.stopId = :fromStopId
+            AND ts.stopId = :toStopId
+            AND dep.departureTime >= :departureTime
+            AND dep.upload.id IN :versionIds AND (dep.retiredBy IS NULL OR dep.retiredBy NOT IN :versionIds)
+            AND arr.upload.id IN :versionIds AND (arr.retiredBy IS NULL OR arr.retiredBy NOT IN :versionIds)
+            AND t.serviceId IN :serviceIds
+            UNION ALL
+            SELECT t.tripId, r.routeShortName, r.routeLongName, fs.stopName, ts.stopName,
+                dep.departureTime - 86400, arr.arrivalTime - 86400, t.wheelchairAccessible, t.bikesAllowed, 1
+            FROM StopTime dep
+            JOIN dep.trip t
+            JOIN t.route r
+            JOIN dep.stop fs
+            JOIN StopTime arr ON arr.trip = t AND arr.stopSequence > dep.stopSequence
+            JOIN arr.stop ts
+            WHERE fs.stopId = :fromStopId
+            AND ts.stopId = :toStopId
+            AND dep.departureTime >= :departureTime + 86400
+            AND dep.upload.id IN :versionIds AND (dep.retiredBy IS NULL OR dep.retiredBy NOT IN :versionIds)
+            AND arr.upload.id IN :versionIds AND (arr.retiredBy IS NULL OR arr.retiredBy NOT IN :versionIds)
+            AND t.serviceId IN :previousServiceIds
+        ) c
+        ORDER BY c.departureTime, c.previousDay
         """)
-    List<StopTime> findConnections(@Param("fromStopId") String fromStopId,
-                                   @Param("toStopId") String toStopId,
-                                   @Param("departureTime") LocalTime departureTime,
-                                   @Param("travelDate") LocalDate travelDate);
+    List<ConnectionDto> findConnections(@Param("fromStopId") String fromStopId,
+                                        @Param("toStopId") String toStopId,
+                                        @Param("departureTime") int departureTime,
+                                        @Param("serviceIds") Collection<String> serviceIds,
+                                        @Param("previousServiceIds") Collection<String> previousServiceIds,
+                                        @Param("versionIds") Collection<Long> versionIds,
+                                        Limit limit);
 
     @Query("""
-        SELECT st FROM StopTime st
-        JOIN FETCH st.stop
-        WHERE st.trip.tripId = :tripId
-        AND st.upload.isActive = true
-        ORDER BY st.stopSequence
+        SELECT COUNT(st) FROM StopTime st
+        WHERE st.upload.id IN :versionIds
+        AND (st.retiredBy IS NULL OR st.retiredBy NOT IN :versionIds)
         """)
-    List<StopTime> findByTripIdOrderByStopSequence(@Param("tripId") String tripId);
+    long countVisible(@Param("versionIds") Collection<Long> versionIds);
 
-    @Query("""
-        SELECT st FROM StopTime st
-        WHERE st.stop.stopId = :stopId
-        AND st.upload.isActive = true
-        ORDER BY st.departureTime
-        """)
-    List<StopTime> findByStopIdOrderByDepartureTime(@Param("stopId") String stopId);
+    @Modifying
+    @Query("UPDATE StopTime st SET st.retiredBy = :uploadId WHERE st.trip.id IN :tripIds AND st.retiredBy IS NULL")
+    int retireByTripIds(@Param("tripIds") Collection<Long> tripIds, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE StopTime st SET st.retiredBy = NULL WHERE st.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM StopTime st WHERE st.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
 }
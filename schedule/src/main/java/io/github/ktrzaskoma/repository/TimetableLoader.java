@@ -0,0 +1,162 @@
+package io.github.ktrzaskoma.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Streams the rows of one timetable version straight into the in-memory timetable, without entities
+// or intermediate lists. Every query filters to the rows visible in the given version chain.
+@Repository
+public class TimetableLoader {
+
+    private static final String VISIBLE = """
+            upload_id IN (:versionIds) AND (retired_by IS NULL OR retired_by NOT IN (:versionIds))
+            """;
+
+    private static final String SELECT_STOPS = """
+            SELECT id, stop_id, stop_name, stop_lat, stop_lon, wheelchair_boarding FROM stops WHERE
+            """ + VISIBLE;
+
+    private static final String SELECT_ROUTES = """
+            SELECT id, route_id, route_short_name, route_long_name, route_type FROM routes WHERE
+            """ + VISIBLE;
+
+    private static final String SELECT_TRIPS = """
+            SELECT id, trip_id, route_pk, service_id, trip_headsign, wheelchair_accessible, bikes_allowed
+            FROM trips WHERE
+            """ + VISIBLE;
+
+    // Ordered so that the rows of a trip arrive together and in sequence
+    private static final String SELECT_STOP_TIMES = """
+            SELECT trip_pk, stop_pk, stop_sequence, arrival_time, departure_time FROM stop_times WHERE
+            """ + VISIBLE + "ORDER BY trip_pk, stop_sequence";
+
+    private static final String SELECT_CALENDAR_DATES = """
+            SELECT service_id, date, exception_type FROM calendar_dates WHERE
+            """ + VISIBLE;
+
+    private static final String SELECT_WEEKLY_CALENDARS = """
+            SELECT service_id, weekdays, start_date, end_date FROM calendars WHERE
+            """ + VISIBLE;
+
+    // Compiled per upload rather than per version, so these are not filtered by the version chain
+    private static final String SELECT_SERVICE_CALENDARS = """
+            SELECT service_id, first_date, days FROM service_calendars WHERE upload_id = :uploadId
+            """;
+
+    private static final String SELECT_TRANSFERS = """
+            SELECT from_stop_id, to_stop_id, transfer_type, min_transfer_time FROM transfers WHERE
+            """ + VISIBLE;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public TimetableLoader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    public void readStops(List<Long> versionIds, StopHandler handler) {
+        jdbcTemplate.query(SELECT_STOPS, versions(versionIds), rs -> {
+            handler.stop(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getDouble(4), rs.getDouble(5),
+                    rs.getInt(6));
+        });
+    }
+
+    public void readRoutes(List<Long> versionIds, RouteHandler handler) {
+        jdbcTemplate.query(SELECT_ROUTES, versions(versionIds), rs -> {
+            handler.route(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+        });
+    }
+
+    public void readTrips(List<Long> versionIds, TripHandler handler) {
+        jdbcTemplate.query(SELECT_TRIPS, versions(versionIds), rs -> {
+            handler.trip(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4), rs.getString(5),
+                    rs.getInt(6), rs.getInt(7));
+        });
+    }
+
+    public void readStopTimes(List<Long> versionIds, StopTimeHandler handler) {
+        jdbcTemplate.query(SELECT_STOP_TIMES, versions(versionIds), rs -> {
+            handler.stopTime(rs.getLong(1), rs.getLong(2), rs.getInt(3),
+                    rs.getInt(4), rs.getInt(5));
+        });
+    }
+
+    public void readCalendarDates(List<Long> versionIds, CalendarDateHandler handler) {
+        jdbcTemplate.query(SELECT_CALENDAR_DATES, versions(versionIds), rs -> {
+            handler.calendarDate(rs.getString(1), rs.getObject(2, LocalDate.class), rs.getInt(3));
+        });
+    }
+
+    public void readWeeklyCalendars(List<Long> versionIds, WeeklyCalendarHandler handler) {
+        jdbcTemplate.query(SELECT_WEEKLY_CALENDARS, versions(versionIds), rs -> {
+            handler.weeklyCalendar(rs.getString(1), rs.getInt(2), rs.getObject(3, LocalDate.class),
+                    rs.getObject(4, LocalDate.class));
+        });
+    }
+
+    public void readServiceCalendars(long uploadId, ServiceCalendarHandler handler) {
+        jdbcTemplate.query(SELECT_SERVICE_CALENDARS, new MapSqlParameterSource("uploadId", uploadId), rs -> {
+            handler.serviceCalendar(rs.getString(1), rs.getObject(2, LocalDate.class), rs.getBytes(3));
+        });
+    }
+
+    // A missing minimum transfer time is passed as -1
+    public void readTransfers(List<Long> versionIds, TransferHandler handler) {
+        jdbcTemplate.query(SELECT_TRANSFERS, versions(versionIds), rs -> {
+            int minTransferTime = rs.getInt(4);
+            handler.transfer(rs.getString(1), rs.getString(2), rs.getInt(3), rs.wasNull() ? -1 : minTransferTime);
+        });
+    }
+
+    private MapSqlParameterSource versions(List<Long> versionIds) {
+        return new MapSqlParameterSource("versionIds", versionIds);
+    }
+
+    @FunctionalInterface
+    public interface StopHandler {
+        void stop(long id, String stopId, String stopName, double stopLat, double stopLon, int wheelchairBoarding);
+    }
+
+    @FunctionalInterface
+    public interface RouteHandler {
+        void route(long id, String routeId, String routeShortName, String routeLongName, int routeType);
+    }
+
+    @FunctionalInterface
+    public interface TripHandler {
+        void trip(long id, String tripId, long routeId, String serviceId, String tripHeadsign,
+                  int wheelchairAccessible, int bikesAllowed);
+    }
+
+    // Times are seconds since the start of the service day
+    @FunctionalInterface
+    public interface StopTimeHandler {
+        void stopTime(long tripId, long stopId, int stopSequence, int arrivalTime, int departureTime);
+    }
+
+    @FunctionalInterface
+    public interface CalendarDateHandler {
+        void calendarDate(String serviceId, LocalDate date, int exceptionType);
+    }
+
+    // Bit 0 of weekdays is Monday, bit 6 Sunday
+    @FunctionalInterface
+    public interface WeeklyCalendarHandler {
+        void weeklyCalendar(String serviceId, int weekdays, LocalDate startDate, LocalDate endDate);
+    }
+
+    // Bit d of days, as written by BitSet.toByteArray, stands for firstDate + d
+    @FunctionalInterface
+    public interface ServiceCalendarHandler {
+        void serviceCalendar(String serviceId, LocalDate firstDate, byte[] days);
+    }
+
+    @FunctionalInterface
+    public interface TransferHandler {
+        void transfer(String fromStopId, String toStopId, int transferType, int minTransferTime);
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.ktrzaskoma.repository;
+
+import io.github.ktrzaskoma.model.Transfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TransferRepository extends JpaRepository<Transfer, Long> {
+
+    @Query("SELECT t FROM Transfer t WHERE t.upload.id IN :versionIds AND t.retiredBy IS NULL")
+    List<Transfer> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE Transfer t SET t.retiredBy = :uploadId WHERE t.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE Transfer t SET t.retiredBy = NULL WHERE t.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM Transfer t WHERE t.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
+}
@@ -2,8 +2,40 @@ package io.github.ktrzaskoma.repository;
 
 import io.github.ktrzaskoma.model.Trip;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface TripRepository extends JpaRepository<Trip, String> {
+public interface TripRepository extends JpaRepository<Trip, Long> {
+
+    @Query("""
+        SELECT COUNT(t) FROM Trip t
+        WHERE t.upload.id IN :versionIds
+        AND (t.retiredBy IS NULL OR t.retiredBy NOT IN :versionIds)
+        """)
+    long countVisible(@Param("versionIds") Collection<Long> versionIds);
+
+    @Query("""
+        SELECT new io.github.ktrzaskoma.repository.GtfsRowState(t.tripId, t.id, t.rowHash, t.stopTimesHash)
+        FROM Trip t
+        WHERE t.upload.id IN :versionIds AND t.retiredBy IS NULL
+        """)
+    List<GtfsRowState> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE Trip t SET t.retiredBy = :uploadId WHERE t.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE Trip t SET t.retiredBy = NULL WHERE t.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM Trip t WHERE t.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
 }
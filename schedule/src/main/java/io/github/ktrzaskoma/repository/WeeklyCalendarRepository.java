@@ -0,0 +1,37 @@
+package io.github.ktrzaskoma.repository;
+
+import io.github.ktrzaskoma.model.WeeklyCalendar;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WeeklyCalendarRepository extends JpaRepository<WeeklyCalendar, Long> {
+
+    @Query("""
+        SELECT COUNT(c) FROM WeeklyCalendar c
+        WHERE c.upload.id IN :versionIds
+        AND (c.retiredBy IS NULL OR c.retiredBy NOT IN :versionIds)
+        """)
+    long countVisible(@Param("versionIds") Collection<Long> versionIds);
+
+    @Query("SELECT c FROM WeeklyCalendar c WHERE c.upload.id IN :versionIds AND c.retiredBy IS NULL")
+    List<WeeklyCalendar> findCurrentRows(@Param("versionIds") List<Long> versionIds);
+
+    @Modifying
+    @Query("UPDATE WeeklyCalendar c SET c.retiredBy = :uploadId WHERE c.id IN :ids")
+    int retire(@Param("ids") Collection<Long> ids, @Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("UPDATE WeeklyCalendar c SET c.retiredBy = NULL WHERE c.retiredBy = :uploadId")
+    int restoreRetiredBy(@Param("uploadId") Long uploadId);
+
+    @Modifying
+    @Query("DELETE FROM WeeklyCalendar c WHERE c.upload.id = :uploadId")
+    int deleteByUploadId(@Param("uploadId") Long uploadId);
+}
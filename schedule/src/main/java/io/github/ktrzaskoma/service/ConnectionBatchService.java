@@ -0,0 +1,114 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.dto.ConnectionBatchResultDto;
+import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.dto.ConnectionQueryDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Many connection queries in one request, e.g. every station to one destination for a single screen. The queries
+// run in parallel on a bounded pool and share one deadline, queries still running when it passes are reported as
+// timed out instead of holding up the others. Queries the full pool turns away are reported as rejected.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConnectionBatchService {
+
+    private final ScheduleService scheduleService;
+    private final ThreadPoolTaskExecutor scheduleQueryExecutor;
+
+    @Value("${gtfs.batch.max-queries:100}")
+    private int maxQueries;
+
+    @Value("${gtfs.batch.timeout:PT2S}")
+    private Duration timeout;
+
+    public List<ConnectionBatchResultDto> findConnections(List<ConnectionQueryDto> queries) {
+        if (queries == null || queries.isEmpty()) {
+            throw new IllegalArgumentException("A batch needs at least one query");
+        }
+        if (queries.size() > maxQueries) {
+            throw new IllegalArgumentException("A batch can have at most " + maxQueries + " queries");
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<ConnectionQueryDto> resolved = queries.stream().map(ConnectionBatchService::withDefaults).toList();
+        List<CompletableFuture<List<ConnectionDto>>> futures = new ArrayList<>(resolved.size());
+        for (ConnectionQueryDto query : resolved) {
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> scheduleService.findConnections(
+                        query.getFromStopId(), query.getToStopId(), query.getDate(), query.getTime()),
+                        scheduleQueryExecutor));
+            } catch (RejectedExecutionException e) {
+                // The pool and its queue are full, the rest of the batch still gets what capacity there is
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        // Collected in request order, each wait only gets what is left of the batch budget
+        List<ConnectionBatchResultDto> results = new ArrayList<>(resolved.size());
+        for (int i = 0; i < resolved.size(); i++) {
+            results.add(await(resolved.get(i), futures.get(i), deadline));
+        }
+        return results;
+    }
+
+    private ConnectionBatchResultDto await(ConnectionQueryDto query, CompletableFuture<List<ConnectionDto>> future,
+                                           long deadline) {
+        ConnectionBatchResultDto.ConnectionBatchResultDtoBuilder result = ConnectionBatchResultDto.builder()
+                .fromStopId(query.getFromStopId())
+                .toStopId(query.getToStopId())
+                .date(query.getDate())
+                .time(query.getTime());
+        try {
+            List<ConnectionDto> connections = future.get(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+            return result.status(ConnectionBatchResultDto.Status.OK).connections(connections).build();
+        } catch (TimeoutException e) {
+            // Queries that have not started yet are dropped, a running one finishes but is not waited for
+            future.cancel(false);
+            return result.status(ConnectionBatchResultDto.Status.TIMED_OUT).connections(List.of())
+                    .message("No answer within " + timeout.toMillis() + " ms").build();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                return result.status(ConnectionBatchResultDto.Status.REJECTED).connections(List.of())
+                        .message("Too many queries in progress, try again later").build();
+            }
+            log.warn("Batch query from {} to {} failed", query.getFromStopId(), query.getToStopId(), e.getCause());
+            return result.status(ConnectionBatchResultDto.Status.FAILED).connections(List.of())
+                    .message(e.getCause().getMessage()).build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            return result.status(ConnectionBatchResultDto.Status.FAILED).connections(List.of())
+                    .message("Interrupted").build();
+        }
+    }
+
+    // Same defaults as a single connection query
+    private static ConnectionQueryDto withDefaults(ConnectionQueryDto query) {
+        if (query.getFromStopId() == null || query.getToStopId() == null) {
+            throw new IllegalArgumentException("Every query needs a fromStopId and a toStopId");
+        }
+        return ConnectionQueryDto.builder()
+                .fromStopId(query.getFromStopId())
+                .toStopId(query.getToStopId())
+                .date(query.getDate() != null ? query.getDate() : LocalDate.now())
+                .time(query.getTime() != null ? query.getTime() : LocalTime.now())
+                .build();
+    }
+}
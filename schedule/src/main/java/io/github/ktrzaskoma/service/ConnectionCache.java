@@ -0,0 +1,135 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of connection results. Entries expire after a fixed time and the whole cache is dropped when
+// another upload is activated. Departure times are grouped into buckets, so the few busy stop pairs are computed
+// once per bucket instead of once per request.
+@Component
+@Slf4j
+class ConnectionCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final int bucketSeconds;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+    private final Counter invalidations;
+
+    // Replaced as a whole on invalidation, results computed before it are not stored in the new one
+    private Generation generation = new Generation();
+
+    ConnectionCache(@Value("${gtfs.cache.connections.max-size:10000}") int maxSize,
+                    @Value("${gtfs.cache.connections.ttl:PT10M}") Duration ttl,
+                    @Value("${gtfs.cache.connections.bucket:PT5M}") Duration bucket,
+                    MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.bucketSeconds = (int) bucket.toSeconds();
+        this.hits = Counter.builder("schedule.connections.cache.requests").tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("schedule.connections.cache.requests").tag("result", "miss")
+                .register(meterRegistry);
+        this.sizeEvictions = Counter.builder("schedule.connections.cache.evictions").tag("cause", "size")
+                .register(meterRegistry);
+        this.expiredEvictions = Counter.builder("schedule.connections.cache.evictions").tag("cause", "expired")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("schedule.connections.cache.invalidations").register(meterRegistry);
+        Gauge.builder("schedule.connections.cache.size", this, ConnectionCache::size).register(meterRegistry);
+        Gauge.builder("schedule.connections.cache.hit.ratio", this, ConnectionCache::hitRatio)
+                .register(meterRegistry);
+    }
+
+    // Start of the bucket the time falls into, buckets never cross midnight
+    LocalTime bucketStart(LocalTime time) {
+        int seconds = time.toSecondOfDay();
+        return LocalTime.ofSecondOfDay(seconds - seconds % bucketSeconds);
+    }
+
+    List<ConnectionDto> get(Key key, Supplier<List<ConnectionDto>> loader) {
+        Generation current;
+        synchronized (this) {
+            current = generation;
+            Entry entry = current.entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdAt < ttlNanos) {
+                hits.increment();
+                return entry.connections;
+            }
+            if (entry != null) {
+                current.entries.remove(key);
+                expiredEvictions.increment();
+            }
+        }
+
+        // Computed outside the lock, two requests for the same key may both compute it
+        misses.increment();
+        List<ConnectionDto> connections = List.copyOf(loader.get());
+        synchronized (this) {
+            if (current == generation) {
+                current.entries.put(key, new Entry(connections, System.nanoTime()));
+            }
+        }
+        return connections;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadActivated(UploadActivatedEvent event) {
+        invalidate();
+    }
+
+    synchronized void invalidate() {
+        int dropped = generation.entries.size();
+        generation = new Generation();
+        invalidations.increment();
+        log.info("Connection cache invalidated, {} entries dropped", dropped);
+    }
+
+    synchronized int size() {
+        return generation.entries.size();
+    }
+
+    private double hitRatio() {
+        double requests = hits.count() + misses.count();
+        return requests == 0 ? 0 : hits.count() / requests;
+    }
+
+    // The upload id is that of the timetable or of the service calendars that answer, 0 while nothing is active
+    record Key(long uploadId, String fromStopId, String toStopId, LocalDate date, LocalTime bucketStart) {
+    }
+
+    private record Entry(List<ConnectionDto> connections, long createdAt) {
+    }
+
+    private final class Generation {
+
+        private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    sizeEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.ktrzaskoma.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Connection Scan over the sorted connection arrays of a timetable. Trips of the previous service day that run
+// past midnight are merged into the scan, with their times shifted back by one day.
+final class ConnectionScanner {
+
+    private ConnectionScanner() {
+    }
+
+    // Trips that serve both stops, in order of departure. Times of the returned legs count from midnight of the
+    // requested date.
+    static List<Journey.Leg> directTrips(Timetable timetable, int fromStop, int toStop, LocalDate date, int time,
+                                         int limit) {
+        int serviceDay = timetable.serviceDay(date);
+        int previousServiceDay = timetable.serviceDay(date.minusDays(1));
+        if (serviceDay < 0 && previousServiceDay < 0) {
+            return List.of();
+        }
+        int[] trips = timetable.connectionTrips;
+        int[] fromStops = timetable.connectionFromStops;
+        int[] toStops = timetable.connectionToStops;
+        int[] departures = timetable.connectionDepartures;
+        int[] arrivals = timetable.connectionArrivals;
+        int count = departures.length;
+
+        // Connection where each trip run was boarded, keyed by trip and run day
+        Map<Integer, Integer> boarded = new HashMap<>();
+        List<Journey.Leg> legs = new ArrayList<>();
+
+        int today = timetable.firstConnectionFrom(time);
+        int yesterday = timetable.firstConnectionFrom(time + Timetable.SECONDS_PER_DAY);
+        while (legs.size() < limit && (today < count || yesterday < count)) {
+            boolean fromYesterday = today == count
+                    || yesterday < count && departures[yesterday] - Timetable.SECONDS_PER_DAY < departures[today];
+            int connection = fromYesterday ? yesterday++ : today++;
+            // Most connections touch neither stop, the service day is only looked up for those that do
+            if (fromStops[connection] != fromStop && toStops[connection] != toStop) {
+                continue;
+            }
+            int trip = trips[connection];
+            if (!timetable.runsOn(trip, fromYesterday ? previousServiceDay : serviceDay)) {
+                continue;
+            }
+
+            int run = trip << 1 | (fromYesterday ? 1 : 0);
+            if (fromStops[connection] == fromStop) {
+                boarded.putIfAbsent(run, connection);
+            }
+            if (toStops[connection] == toStop) {
+                Integer boardedAt = boarded.remove(run);
+                if (boardedAt != null) {
+                    int shift = fromYesterday ? Timetable.SECONDS_PER_DAY : 0;
+                    legs.add(new Journey.Leg(trip, fromStop, toStop, departures[boardedAt] - shift,
+                            arrivals[connection] - shift));
+                }
+            }
+        }
+
+        // Found in order of arrival, a slower train that leaves earlier is listed first
+        legs.sort(Comparator.comparingInt(Journey.Leg::departure));
+        return legs;
+    }
+}
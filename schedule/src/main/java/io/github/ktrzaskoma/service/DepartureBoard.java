@@ -0,0 +1,40 @@
+package io.github.ktrzaskoma.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Next departures from a stop, read from the stop's sorted departure times. Departures of the previous service
+// day that fall after midnight are merged in with their times shifted back by one day.
+final class DepartureBoard {
+
+    private DepartureBoard() {
+    }
+
+    // Times of the returned departures count from midnight of the requested date
+    static List<Departure> next(Timetable timetable, int stop, LocalDate date, int time, int limit) {
+        int serviceDay = timetable.serviceDay(date);
+        int previousServiceDay = timetable.serviceDay(date.minusDays(1));
+        int[] times = timetable.stopDepartureTimes;
+        int[] trips = timetable.stopDepartureTrips;
+        int end = timetable.stopDepartureStart[stop + 1];
+
+        List<Departure> departures = new ArrayList<>(limit);
+        int today = serviceDay < 0 ? end : timetable.firstDepartureFrom(stop, time);
+        int yesterday = previousServiceDay < 0 ? end
+                : timetable.firstDepartureFrom(stop, time + Timetable.SECONDS_PER_DAY);
+        while (departures.size() < limit && (today < end || yesterday < end)) {
+            boolean fromYesterday = today == end
+                    || yesterday < end && times[yesterday] - Timetable.SECONDS_PER_DAY < times[today];
+            int departure = fromYesterday ? yesterday++ : today++;
+            if (timetable.runsOn(trips[departure], fromYesterday ? previousServiceDay : serviceDay)) {
+                int shift = fromYesterday ? Timetable.SECONDS_PER_DAY : 0;
+                departures.add(new Departure(trips[departure], times[departure] - shift));
+            }
+        }
+        return departures;
+    }
+
+    record Departure(int trip, int time) {
+    }
+}
@@ -0,0 +1,255 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.model.Agency;
+import io.github.ktrzaskoma.model.CalendarDate;
+import io.github.ktrzaskoma.model.Route;
+import io.github.ktrzaskoma.model.Stop;
+import io.github.ktrzaskoma.model.StopTime;
+import io.github.ktrzaskoma.model.Transfer;
+import io.github.ktrzaskoma.model.Trip;
+import io.github.ktrzaskoma.model.WeeklyCalendar;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipFile;
+
+// Row parsing shared by the full and the differential import, so both produce identical entities and row hashes.
+// Each file gets a record of its column indices, resolved from the header once before the rows are read.
+final class GtfsCsv {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private GtfsCsv() {
+    }
+
+    static GtfsReader openReader(ZipFile zip, String fileName) throws IOException {
+        return new GtfsReader(new InputStreamReader(zip.getInputStream(zip.getEntry(fileName)), StandardCharsets.UTF_8));
+    }
+
+    record AgencyColumns(int agencyId, int agencyName, int agencyUrl, int agencyLang, int agencyTimezone) {
+
+        static AgencyColumns of(GtfsReader reader) {
+            return new AgencyColumns(reader.column("agency_id"), reader.column("agency_name"),
+                    reader.column("agency_url"), reader.column("agency_lang"), reader.column("agency_timezone"));
+        }
+
+        Agency read(GtfsReader reader) {
+            Agency agency = Agency.builder()
+                    .agencyId(reader.optional(agencyId, "default"))
+                    .agencyName(reader.required(agencyName, "agency_name"))
+                    .agencyUrl(reader.required(agencyUrl, "agency_url"))
+                    .agencyLang(reader.optional(agencyLang, "en"))
+                    .agencyTimezone(reader.required(agencyTimezone, "agency_timezone"))
+                    .build();
+            agency.setRowHash(hash(agency.getAgencyId(), agency.getAgencyName(), agency.getAgencyUrl(),
+                    agency.getAgencyLang(), agency.getAgencyTimezone()));
+            return agency;
+        }
+    }
+
+    record StopColumns(int stopId, int stopName, int stopLat, int stopLon, int wheelchairBoarding) {
+
+        static StopColumns of(GtfsReader reader) {
+            return new StopColumns(reader.column("stop_id"), reader.column("stop_name"), reader.column("stop_lat"),
+                    reader.column("stop_lon"), reader.column("wheelchair_boarding"));
+        }
+
+        Stop read(GtfsReader reader) {
+            Stop stop = Stop.builder()
+                    .stopId(reader.required(stopId, "stop_id"))
+                    .stopName(reader.required(stopName, "stop_name"))
+                    .stopLat(new BigDecimal(reader.required(stopLat, "stop_lat")))
+                    .stopLon(new BigDecimal(reader.required(stopLon, "stop_lon")))
+                    .wheelchairBoarding(reader.integer(wheelchairBoarding, 0))
+                    .build();
+            stop.setRowHash(hash(stop.getStopId(), stop.getStopName(), stop.getStopLat().toPlainString(),
+                    stop.getStopLon().toPlainString(), stop.getWheelchairBoarding()));
+            return stop;
+        }
+    }
+
+    // The agency reference is resolved by the caller, the hash covers its GTFS id
+    record RouteColumns(int routeId, int agencyId, int routeShortName, int routeLongName, int routeType,
+                        int routeColor, int routeTextColor) {
+
+        static RouteColumns of(GtfsReader reader) {
+            return new RouteColumns(reader.column("route_id"), reader.column("agency_id"),
+                    reader.column("route_short_name"), reader.column("route_long_name"), reader.column("route_type"),
+                    reader.column("route_color"), reader.column("route_text_color"));
+        }
+
+        String agencyId(GtfsReader reader) {
+            return reader.optional(agencyId, "default");
+        }
+
+        Route read(GtfsReader reader) {
+            Route route = Route.builder()
+                    .routeId(reader.required(routeId, "route_id"))
+                    .routeShortName(reader.optional(routeShortName, ""))
+                    .routeLongName(reader.optional(routeLongName, ""))
+                    .routeType(reader.requiredInteger(routeType, "route_type"))
+                    .routeColor(reader.optional(routeColor, "FFFFFF"))
+                    .routeTextColor(reader.optional(routeTextColor, "000000"))
+                    .build();
+            route.setRowHash(hash(route.getRouteId(), agencyId(reader), route.getRouteShortName(),
+                    route.getRouteLongName(), route.getRouteType(), route.getRouteColor(), route.getRouteTextColor()));
+            return route;
+        }
+    }
+
+    // The route reference is resolved by the caller, the hash covers its GTFS id
+    record TripColumns(int tripId, int routeId, int serviceId, int tripHeadsign, int tripShortName, int directionId,
+                       int shapeId, int wheelchairAccessible, int bikesAllowed) {
+
+        static TripColumns of(GtfsReader reader) {
+            return new TripColumns(reader.column("trip_id"), reader.column("route_id"), reader.column("service_id"),
+                    reader.column("trip_headsign"), reader.column("trip_short_name"), reader.column("direction_id"),
+                    reader.column("shape_id"), reader.column("wheelchair_accessible"), reader.column("bikes_allowed"));
+        }
+
+        String routeId(GtfsReader reader) {
+            return reader.required(routeId, "route_id");
+        }
+
+        Trip read(GtfsReader reader) {
+            Trip trip = Trip.builder()
+                    .tripId(reader.required(tripId, "trip_id"))
+                    .serviceId(reader.requiredId(serviceId, "service_id"))
+                    .tripHeadsign(reader.optional(tripHeadsign, ""))
+                    .tripShortName(reader.optional(tripShortName, ""))
+                    .directionId(reader.integer(directionId, 0))
+                    .shapeId(reader.optional(shapeId, ""))
+                    .wheelchairAccessible(reader.integer(wheelchairAccessible, 0))
+                    .bikesAllowed(reader.integer(bikesAllowed, 0))
+                    .build();
+            trip.setRowHash(hash(trip.getTripId(), routeId(reader), trip.getServiceId(), trip.getTripHeadsign(),
+                    trip.getTripShortName(), trip.getDirectionId(), trip.getShapeId(), trip.getWheelchairAccessible(),
+                    trip.getBikesAllowed()));
+            return trip;
+        }
+    }
+
+    // Trip and stop references are resolved by the caller from the interned ids
+    record StopTimeColumns(int tripId, int stopId, int stopSequence, int arrivalTime, int departureTime) {
+
+        static StopTimeColumns of(GtfsReader reader) {
+            return new StopTimeColumns(reader.column("trip_id"), reader.column("stop_id"),
+                    reader.column("stop_sequence"), reader.column("arrival_time"), reader.column("departure_time"));
+        }
+
+        String tripId(GtfsReader reader) {
+            return reader.requiredId(tripId, "trip_id");
+        }
+
+        String stopId(GtfsReader reader) {
+            return reader.requiredId(stopId, "stop_id");
+        }
+
+        StopTime read(GtfsReader reader) {
+            return StopTime.builder()
+                    .stopSequence(reader.requiredInteger(stopSequence, "stop_sequence"))
+                    .arrivalTime(reader.seconds(arrivalTime, "arrival_time"))
+                    .departureTime(reader.seconds(departureTime, "departure_time"))
+                    .build();
+        }
+    }
+
+    record CalendarDateColumns(int serviceId, int date, int exceptionType) {
+
+        static CalendarDateColumns of(GtfsReader reader) {
+            return new CalendarDateColumns(reader.column("service_id"), reader.column("date"),
+                    reader.column("exception_type"));
+        }
+
+        CalendarDate read(GtfsReader reader) {
+            return CalendarDate.builder()
+                    .serviceId(reader.requiredId(serviceId, "service_id"))
+                    .date(reader.date(date, "date"))
+                    .exceptionType(reader.requiredInteger(exceptionType, "exception_type"))
+                    .build();
+        }
+    }
+
+    // The day columns in the order of DayOfWeek, Monday first
+    record WeeklyCalendarColumns(int serviceId, int[] days, int startDate, int endDate) {
+
+        private static final String[] DAY_COLUMNS =
+                {"monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"};
+
+        static WeeklyCalendarColumns of(GtfsReader reader) {
+            int[] days = new int[DAY_COLUMNS.length];
+            for (int day = 0; day < days.length; day++) {
+                days[day] = reader.column(DAY_COLUMNS[day]);
+            }
+            return new WeeklyCalendarColumns(reader.column("service_id"), days, reader.column("start_date"),
+                    reader.column("end_date"));
+        }
+
+        WeeklyCalendar read(GtfsReader reader) {
+            int weekdays = 0;
+            for (int day = 0; day < days.length; day++) {
+                if (Integer.valueOf(1).equals(reader.requiredInteger(days[day], DAY_COLUMNS[day]))) {
+                    weekdays |= 1 << day;
+                }
+            }
+            return WeeklyCalendar.builder()
+                    .serviceId(reader.requiredId(serviceId, "service_id"))
+                    .weekdays(weekdays)
+                    .startDate(reader.date(startDate, "start_date"))
+                    .endDate(reader.date(endDate, "end_date"))
+                    .build();
+        }
+    }
+
+    record TransferColumns(int fromStopId, int toStopId, int transferType, int minTransferTime) {
+
+        static TransferColumns of(GtfsReader reader) {
+            return new TransferColumns(reader.column("from_stop_id"), reader.column("to_stop_id"),
+                    reader.column("transfer_type"), reader.column("min_transfer_time"));
+        }
+
+        Transfer read(GtfsReader reader) {
+            return Transfer.builder()
+                    .fromStopId(reader.requiredId(fromStopId, "from_stop_id"))
+                    .toStopId(reader.requiredId(toStopId, "to_stop_id"))
+                    .transferType(reader.integer(transferType, 0))
+                    .minTransferTime(reader.integer(minTransferTime))
+                    .build();
+        }
+    }
+
+    // Summed per trip into Trip.stopTimesHash, so the order of rows in the file does not matter
+    static long stopTimeHash(String stopId, StopTime stopTime) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < stopId.length(); i++) {
+            hash = (hash ^ stopId.charAt(i)) * FNV_PRIME;
+        }
+        hash = (hash ^ (stopTime.getStopSequence() != null ? stopTime.getStopSequence() : -1)) * FNV_PRIME;
+        hash = (hash ^ stopTime.getArrivalTime()) * FNV_PRIME;
+        hash = (hash ^ stopTime.getDepartureTime()) * FNV_PRIME;
+        return mix(hash);
+    }
+
+    // FNV-1a over the normalized field values, finished with a mixing step so that sums of hashes stay well spread
+    static long hash(Object... values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (Object value : values) {
+            String text = value != null ? value.toString() : "\0";
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+            }
+            hash = (hash ^ 0x1f) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,521 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.model.Agency;
+import io.github.ktrzaskoma.model.CalendarDate;
+import io.github.ktrzaskoma.model.Route;
+import io.github.ktrzaskoma.model.Stop;
+import io.github.ktrzaskoma.model.StopTime;
+import io.github.ktrzaskoma.model.Transfer;
+import io.github.ktrzaskoma.model.Trip;
+import io.github.ktrzaskoma.model.WeeklyCalendar;
+import io.github.ktrzaskoma.repository.AgencyRepository;
+import io.github.ktrzaskoma.repository.CalendarDateRepository;
+import io.github.ktrzaskoma.repository.GtfsBulkLoader;
+import io.github.ktrzaskoma.repository.GtfsRowState;
+import io.github.ktrzaskoma.repository.RouteRepository;
+import io.github.ktrzaskoma.repository.StopRepository;
+import io.github.ktrzaskoma.repository.StopTimeRepository;
+import io.github.ktrzaskoma.repository.TransferRepository;
+import io.github.ktrzaskoma.repository.TripRepository;
+import io.github.ktrzaskoma.repository.WeeklyCalendarRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+import static io.github.ktrzaskoma.service.GtfsCsv.openReader;
+
+// Imports a feed as the changes against the rows that are current in the base upload. Unchanged rows stay
+// where they are and are shared through the version chain, replaced and removed rows are marked as retired.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+class GtfsDiffImporter {
+
+    private final AgencyRepository agencyRepository;
+    private final StopRepository stopRepository;
+    private final RouteRepository routeRepository;
+    private final TripRepository tripRepository;
+    private final StopTimeRepository stopTimeRepository;
+    private final CalendarDateRepository calendarDateRepository;
+    private final TransferRepository transferRepository;
+    private final WeeklyCalendarRepository weeklyCalendarRepository;
+    private final GtfsBulkLoader bulkLoader;
+    private final EntityManager entityManager;
+
+    @Value("${gtfs.import.bulk-load:true}")
+    private boolean bulkLoad;
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Transactional(rollbackFor = Exception.class)
+    public String importDiff(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds) throws Exception {
+        long startTime = System.nanoTime();
+        Map<String, Changes> changes = new LinkedHashMap<>();
+        for (String file : List.of("agency.txt", "stops.txt", "routes.txt", "trips.txt", "stop_times.txt", "calendar.txt",
+                "calendar_dates.txt", "transfers.txt")) {
+            changes.put(file, new Changes());
+        }
+
+        Set<String> replacedAgencies = diffAgencies(zip, context, baseVersionIds, changes);
+        Set<String> replacedStops = diffStops(zip, context, baseVersionIds, changes);
+        Set<String> replacedRoutes = diffRoutes(zip, context, baseVersionIds, replacedAgencies, changes);
+
+        // Trips are compared by their own row and by the stop times they own, so those are summed up first
+        Map<String, Long> stopTimesHashes = new HashMap<>();
+        Set<String> tripsAtReplacedStops = new HashSet<>();
+        hashStopTimes(zip, context, replacedStops, stopTimesHashes, tripsAtReplacedStops);
+
+        Set<String> replacedTrips = diffTrips(zip, context, baseVersionIds, replacedRoutes, stopTimesHashes,
+                tripsAtReplacedStops, changes);
+        insertStopTimes(zip, context, replacedTrips, changes);
+        diffWeeklyCalendars(zip, context, baseVersionIds, changes);
+        diffCalendarDates(zip, context, baseVersionIds, changes);
+        diffTransfers(zip, context, baseVersionIds, changes);
+
+        changes.forEach((file, fileChanges) -> log.info("Diff of {}: {} inserted, {} changed, {} removed",
+                file, fileChanges.inserted, fileChanges.changed, fileChanges.removed));
+
+        int inserted = changes.values().stream().mapToInt(fileChanges -> fileChanges.inserted).sum();
+        int changed = changes.values().stream().mapToInt(fileChanges -> fileChanges.changed).sum();
+        int removed = changes.values().stream().mapToInt(fileChanges -> fileChanges.removed).sum();
+        log.info("Differential import of upload {} finished in {} ms", context.getUpload().getId(),
+                (System.nanoTime() - startTime) / 1_000_000);
+
+        return String.format("GTFS data imported as changes: %d inserted, %d changed, %d removed rows",
+                inserted, changed, removed);
+    }
+
+    private Set<String> diffAgencies(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                     Map<String, Changes> changes) throws Exception {
+        List<ParsedRow<Agency>> rows = new ArrayList<>();
+        readRows(zip, "agency.txt", context, GtfsCsv.AgencyColumns::of, (reader, columns) -> {
+            Agency agency = columns.read(reader);
+            agency.setUpload(context.getUpload());
+            rows.add(new ParsedRow<>(agency.getAgencyId(), agency.getRowHash(), null, agency));
+        });
+
+        return applyDiff("agency.txt", rows, currentRows(agencyRepository.findCurrentRows(baseVersionIds)),
+                (row, previous) -> false, agencyRepository, Agency::getId, agencyRepository::retire,
+                context.getAgencies(), context, changes);
+    }
+
+    private Set<String> diffStops(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                  Map<String, Changes> changes) throws Exception {
+        List<ParsedRow<Stop>> rows = new ArrayList<>();
+        readRows(zip, "stops.txt", context, GtfsCsv.StopColumns::of, (reader, columns) -> {
+            Stop stop = columns.read(reader);
+            stop.setUpload(context.getUpload());
+            rows.add(new ParsedRow<>(stop.getStopId(), stop.getRowHash(), null, stop));
+        });
+
+        return applyDiff("stops.txt", rows, currentRows(stopRepository.findCurrentRows(baseVersionIds)),
+                (row, previous) -> false, stopRepository, Stop::getId, stopRepository::retire,
+                context.getStops(), context, changes);
+    }
+
+    private Set<String> diffRoutes(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                   Set<String> replacedAgencies, Map<String, Changes> changes) throws Exception {
+        List<ParsedRow<Route>> rows = new ArrayList<>();
+        readRows(zip, "routes.txt", context, GtfsCsv.RouteColumns::of, (reader, columns) -> {
+            String agencyId = columns.agencyId(reader);
+            Route route = columns.read(reader);
+            route.setAgency(context.getAgencies().reference(entityManager, agencyId));
+            route.setUpload(context.getUpload());
+            rows.add(new ParsedRow<>(route.getRouteId(), route.getRowHash(), agencyId, route));
+        });
+
+        // A route pointing at a replaced agency row has to be replaced as well, or it would keep the old one
+        return applyDiff("routes.txt", rows, currentRows(routeRepository.findCurrentRows(baseVersionIds)),
+                (row, previous) -> replacedAgencies.contains(row.parentKey()), routeRepository, Route::getId,
+                routeRepository::retire, context.getRoutes(), context, changes);
+    }
+
+    private Set<String> diffTrips(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                  Set<String> replacedRoutes, Map<String, Long> stopTimesHashes,
+                                  Set<String> tripsAtReplacedStops, Map<String, Changes> changes) throws Exception {
+        // Stop times of a replaced or removed trip are retired together with it
+        Changes stopTimeChanges = changes.get("stop_times.txt");
+        RetireAction retireTrips = (tripIds, uploadId) -> {
+            stopTimeChanges.removed += stopTimeRepository.retireByTripIds(tripIds, uploadId);
+            return tripRepository.retire(tripIds, uploadId);
+        };
+
+        List<ParsedRow<Trip>> rows = new ArrayList<>();
+        readRows(zip, "trips.txt", context, GtfsCsv.TripColumns::of, (reader, columns) -> {
+            String routeId = columns.routeId(reader);
+            Route route = context.getRoutes().reference(entityManager, routeId);
+            if (route != null) {
+                Trip trip = columns.read(reader);
+                trip.setRoute(route);
+                trip.setStopTimesHash(stopTimesHashes.getOrDefault(trip.getTripId(), 0L));
+                trip.setUpload(context.getUpload());
+                rows.add(new ParsedRow<>(trip.getTripId(), trip.getRowHash(), routeId, trip));
+            }
+        });
+
+        return applyDiff("trips.txt", rows,
+                currentRows(tripRepository.findCurrentRows(baseVersionIds)),
+                (row, previous) -> replacedRoutes.contains(row.parentKey())
+                        || tripsAtReplacedStops.contains(row.key())
+                        || !Objects.equals(row.entity().getStopTimesHash(), Objects.requireNonNullElse(previous.stopTimesHash(), 0L)),
+                tripRepository, Trip::getId, retireTrips, context.getTrips(), context, changes);
+    }
+
+    private void hashStopTimes(ZipFile zip, GtfsImportContext context, Set<String> replacedStops,
+                               Map<String, Long> stopTimesHashes, Set<String> tripsAtReplacedStops) throws Exception {
+        context.getJob().startFile("stop_times.txt");
+        int rows = forEachRow(zip, "stop_times.txt", GtfsCsv.StopTimeColumns::of, (reader, columns) -> {
+            String tripId = columns.tripId(reader);
+            String stopId = columns.stopId(reader);
+            if (context.getStops().contains(stopId)) {
+                StopTime stopTime = columns.read(reader);
+                stopTimesHashes.merge(tripId, GtfsCsv.stopTimeHash(stopId, stopTime), Long::sum);
+                if (replacedStops.contains(stopId)) {
+                    tripsAtReplacedStops.add(tripId);
+                }
+            }
+        });
+        context.getJob().addRows("stop_times.txt", rows);
+    }
+
+    private void insertStopTimes(ZipFile zip, GtfsImportContext context, Set<String> replacedTrips,
+                                 Map<String, Changes> changes) throws Exception {
+        Changes stopTimeChanges = changes.get("stop_times.txt");
+        List<StopTime> stopTimes = new ArrayList<>(BATCH_SIZE);
+
+        forEachRow(zip, "stop_times.txt", GtfsCsv.StopTimeColumns::of, (reader, columns) -> {
+            String tripId = columns.tripId(reader);
+            if (!replacedTrips.contains(tripId)) {
+                return;
+            }
+            Trip trip = context.getTrips().reference(entityManager, tripId);
+            Stop stop = context.getStops().reference(entityManager, columns.stopId(reader));
+            if (trip != null && stop != null) {
+                StopTime stopTime = columns.read(reader);
+                stopTime.setTrip(trip);
+                stopTime.setStop(stop);
+                stopTime.setUpload(context.getUpload());
+                stopTimes.add(stopTime);
+                stopTimeChanges.inserted++;
+
+                if (stopTimes.size() >= BATCH_SIZE) {
+                    saveStopTimes(stopTimes);
+                }
+            }
+        });
+
+        if (!stopTimes.isEmpty()) {
+            saveStopTimes(stopTimes);
+        }
+        context.getJob().finishFile("stop_times.txt");
+    }
+
+    // The file is optional, a feed without it removes every calendar of the base
+    private void diffWeeklyCalendars(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                     Map<String, Changes> changes) throws Exception {
+        Map<String, WeeklyCalendar> current = weeklyCalendarRepository.findCurrentRows(baseVersionIds).stream()
+                .collect(Collectors.toMap(WeeklyCalendar::getServiceId, Function.identity(), (first, second) -> first));
+        Changes fileChanges = changes.get("calendar.txt");
+        Set<String> seen = new HashSet<>();
+        List<Long> retired = new ArrayList<>();
+        List<WeeklyCalendar> weeklyCalendars = new ArrayList<>();
+
+        if (zip.getEntry("calendar.txt") != null) {
+            readRows(zip, "calendar.txt", context, GtfsCsv.WeeklyCalendarColumns::of, (reader, columns) -> {
+                WeeklyCalendar weeklyCalendar = columns.read(reader);
+                String key = weeklyCalendar.getServiceId();
+                if (!seen.add(key)) {
+                    log.warn("Skipping duplicate calendar {}", key);
+                    return;
+                }
+
+                WeeklyCalendar previous = current.get(key);
+                if (previous != null && Objects.equals(previous.getWeekdays(), weeklyCalendar.getWeekdays())
+                        && Objects.equals(previous.getStartDate(), weeklyCalendar.getStartDate())
+                        && Objects.equals(previous.getEndDate(), weeklyCalendar.getEndDate())) {
+                    return;
+                }
+                if (previous != null) {
+                    retired.add(previous.getId());
+                    fileChanges.changed++;
+                } else {
+                    fileChanges.inserted++;
+                }
+
+                weeklyCalendar.setUpload(context.getUpload());
+                weeklyCalendars.add(weeklyCalendar);
+            });
+            context.getJob().finishFile("calendar.txt");
+        }
+
+        weeklyCalendarRepository.saveAll(weeklyCalendars);
+        flushAndClear();
+
+        current.forEach((key, previous) -> {
+            if (!seen.contains(key)) {
+                retired.add(previous.getId());
+                fileChanges.removed++;
+            }
+        });
+        retireInBatches(retired, weeklyCalendarRepository::retire, context);
+    }
+
+    // Optional as well when the feed has a calendar.txt, a feed without it removes every calendar date of the base
+    private void diffCalendarDates(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                                   Map<String, Changes> changes) throws Exception {
+        Map<String, CalendarDate> current = calendarDateRepository.findCurrentRows(baseVersionIds).stream()
+                .collect(Collectors.toMap(this::calendarDateKey, Function.identity(), (first, second) -> first));
+        Changes fileChanges = changes.get("calendar_dates.txt");
+        Set<String> seen = new HashSet<>();
+        List<Long> retired = new ArrayList<>();
+        List<CalendarDate> calendarDates = new ArrayList<>(BATCH_SIZE);
+
+        if (zip.getEntry("calendar_dates.txt") != null) {
+            readRows(zip, "calendar_dates.txt", context, GtfsCsv.CalendarDateColumns::of, (reader, columns) -> {
+                CalendarDate calendarDate = columns.read(reader);
+                String key = calendarDateKey(calendarDate);
+                if (!seen.add(key)) {
+                    log.warn("Skipping duplicate calendar date {}", key);
+                    return;
+                }
+
+                CalendarDate previous = current.get(key);
+                if (previous != null && Objects.equals(previous.getExceptionType(), calendarDate.getExceptionType())) {
+                    return;
+                }
+                if (previous != null) {
+                    retired.add(previous.getId());
+                    fileChanges.changed++;
+                } else {
+                    fileChanges.inserted++;
+                }
+
+                calendarDate.setUpload(context.getUpload());
+                calendarDates.add(calendarDate);
+                if (calendarDates.size() >= BATCH_SIZE) {
+                    saveCalendarDates(calendarDates);
+                }
+            });
+        }
+
+        if (!calendarDates.isEmpty()) {
+            saveCalendarDates(calendarDates);
+        }
+
+        current.forEach((key, previous) -> {
+            if (!seen.contains(key)) {
+                retired.add(previous.getId());
+                fileChanges.removed++;
+            }
+        });
+        retireInBatches(retired, calendarDateRepository::retire, context);
+    }
+
+    // The file is optional, a feed without it removes every transfer of the base
+    private void diffTransfers(ZipFile zip, GtfsImportContext context, List<Long> baseVersionIds,
+                               Map<String, Changes> changes) throws Exception {
+        Map<String, Transfer> current = transferRepository.findCurrentRows(baseVersionIds).stream()
+                .collect(Collectors.toMap(this::transferKey, Function.identity(), (first, second) -> first));
+        Changes fileChanges = changes.get("transfers.txt");
+        Set<String> seen = new HashSet<>();
+        List<Long> retired = new ArrayList<>();
+        List<Transfer> transfers = new ArrayList<>();
+
+        if (zip.getEntry("transfers.txt") != null) {
+            readRows(zip, "transfers.txt", context, GtfsCsv.TransferColumns::of, (reader, columns) -> {
+                Transfer transfer = columns.read(reader);
+                String key = transferKey(transfer);
+                if (!seen.add(key)) {
+                    log.warn("Skipping duplicate transfer {}", key);
+                    return;
+                }
+
+                Transfer previous = current.get(key);
+                if (previous != null && Objects.equals(previous.getTransferType(), transfer.getTransferType())
+                        && Objects.equals(previous.getMinTransferTime(), transfer.getMinTransferTime())) {
+                    return;
+                }
+                if (previous != null) {
+                    retired.add(previous.getId());
+                    fileChanges.changed++;
+                } else {
+                    fileChanges.inserted++;
+                }
+
+                transfer.setUpload(context.getUpload());
+                transfers.add(transfer);
+            });
+            context.getJob().finishFile("transfers.txt");
+        }
+
+        transferRepository.saveAll(transfers);
+        flushAndClear();
+
+        current.forEach((key, previous) -> {
+            if (!seen.contains(key)) {
+                retired.add(previous.getId());
+                fileChanges.removed++;
+            }
+        });
+        retireInBatches(retired, transferRepository::retire, context);
+    }
+
+    // Writes new rows for inserted and changed keys and returns those keys, every key ends up registered
+    // with the id of the row that is current after this import
+    private <T> Set<String> applyDiff(String fileName, List<ParsedRow<T>> rows, Map<String, GtfsRowState> current,
+                                      BiPredicate<ParsedRow<T>, GtfsRowState> dependencyReplaced,
+                                      JpaRepository<T, Long> repository, Function<T, Long> idOf,
+                                      RetireAction retire, GtfsIdRegistry<T> registry, GtfsImportContext context,
+                                      Map<String, Changes> changes) {
+        Changes fileChanges = changes.get(fileName);
+        Set<String> replaced = new HashSet<>();
+        List<Long> retired = new ArrayList<>();
+        List<ParsedRow<T>> pending = new ArrayList<>(BATCH_SIZE);
+
+        for (ParsedRow<T> row : rows) {
+            if (replaced.contains(row.key()) || registry.contains(row.key())) {
+                throw new IllegalStateException("Duplicate id " + row.key() + " in " + fileName);
+            }
+
+            GtfsRowState previous = current.get(row.key());
+            if (previous != null && previous.rowHash() != null && previous.rowHash() == row.hash()
+                    && !dependencyReplaced.test(row, previous)) {
+                registry.register(row.key(), previous.id());
+                continue;
+            }
+
+            if (previous != null) {
+                retired.add(previous.id());
+                fileChanges.changed++;
+            } else {
+                fileChanges.inserted++;
+            }
+            replaced.add(row.key());
+            pending.add(row);
+
+            if (pending.size() >= BATCH_SIZE) {
+                saveRows(pending, repository, idOf, registry);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            saveRows(pending, repository, idOf, registry);
+        }
+
+        current.forEach((key, previous) -> {
+            if (!registry.contains(key)) {
+                retired.add(previous.id());
+                fileChanges.removed++;
+            }
+        });
+        retireInBatches(retired, retire, context);
+        context.getJob().finishFile(fileName);
+
+        return replaced;
+    }
+
+    private <T> void saveRows(List<ParsedRow<T>> rows, JpaRepository<T, Long> repository, Function<T, Long> idOf,
+                              GtfsIdRegistry<T> registry) {
+        repository.saveAll(rows.stream().map(ParsedRow::entity).collect(Collectors.toList()));
+        rows.forEach(row -> registry.register(row.key(), idOf.apply(row.entity())));
+        rows.clear();
+        flushAndClear();
+    }
+
+    private void saveStopTimes(List<StopTime> stopTimes) {
+        if (bulkLoad) {
+            bulkLoader.insertStopTimes(stopTimes);
+        } else {
+            stopTimeRepository.saveAll(stopTimes);
+            flushAndClear();
+        }
+        stopTimes.clear();
+    }
+
+    private void saveCalendarDates(List<CalendarDate> calendarDates) {
+        if (bulkLoad) {
+            bulkLoader.insertCalendarDates(calendarDates);
+        } else {
+            calendarDateRepository.saveAll(calendarDates);
+            flushAndClear();
+        }
+        calendarDates.clear();
+    }
+
+    private void retireInBatches(List<Long> ids, RetireAction retire, GtfsImportContext context) {
+        Long uploadId = context.getUpload().getId();
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            retire.retire(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())), uploadId);
+        }
+    }
+
+    private <C> void readRows(ZipFile zip, String fileName, GtfsImportContext context,
+                              Function<GtfsReader, C> columnsOf, RowHandler<C> handler) throws Exception {
+        context.getJob().startFile(fileName);
+        context.getJob().addRows(fileName, forEachRow(zip, fileName, columnsOf, handler));
+    }
+
+    private <C> int forEachRow(ZipFile zip, String fileName, Function<GtfsReader, C> columnsOf,
+                               RowHandler<C> handler) throws Exception {
+        try (GtfsReader reader = openReader(zip, fileName)) {
+            C columns = columnsOf.apply(reader);
+            int rows = 0;
+            while (reader.next()) {
+                rows++;
+                try {
+                    handler.handle(reader, columns);
+                } catch (Exception e) {
+                    log.warn("Error reading {} at line {}: {}", fileName, reader.getLineNumber(), e.getMessage());
+                }
+            }
+            return rows;
+        }
+    }
+
+    private Map<String, GtfsRowState> currentRows(List<GtfsRowState> rows) {
+        return rows.stream().collect(Collectors.toMap(GtfsRowState::gtfsId, Function.identity()));
+    }
+
+    private String calendarDateKey(CalendarDate calendarDate) {
+        return calendarDate.getServiceId() + "|" + calendarDate.getDate();
+    }
+
+    private String transferKey(Transfer transfer) {
+        return transfer.getFromStopId() + "|" + transfer.getToStopId();
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    // Parent key is the GTFS id of the referenced agency or route, null for rows without one
+    private record ParsedRow<T>(String key, long hash, String parentKey, T entity) {
+    }
+
+    private static class Changes {
+        private int inserted;
+        private int changed;
+        private int removed;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler<C> {
+        void handle(GtfsReader reader, C columns) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface RetireAction {
+        int retire(Collection<Long> ids, Long uploadId);
+    }
+}
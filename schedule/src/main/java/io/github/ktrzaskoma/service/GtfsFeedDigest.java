@@ -0,0 +1,79 @@
+package io.github.ktrzaskoma.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// SHA-256 fingerprints of an uploaded feed. The archive hash catches byte for byte re-uploads, the entry hashes
+// catch the same files packed again, where timestamps and compression make the archive bytes differ.
+final class GtfsFeedDigest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GtfsFeedDigest() {
+    }
+
+    // Hashes the upload while it is written to disk, so the archive is read only once
+    static String copyAndHash(InputStream in, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream digestIn = new DigestInputStream(in, digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            digestIn.transferTo(out);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Uncompressed content of every GTFS file, sorted by name. Only the top level .txt files are read by the
+    // import, so other entries such as __MACOSX/ resource forks or a README do not make two feeds differ.
+    static Map<String, String> entryHashes(ZipFile zip) throws IOException {
+        Map<String, String> hashes = new TreeMap<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (ZipEntry entry : zip.stream().filter(GtfsFeedDigest::isGtfsFile).toList()) {
+            MessageDigest digest = sha256();
+            try (InputStream in = zip.getInputStream(entry)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            hashes.put(entry.getName(), HexFormat.of().formatHex(digest.digest()));
+        }
+        return hashes;
+    }
+
+    private static boolean isGtfsFile(ZipEntry entry) {
+        String name = entry.getName();
+        return !entry.isDirectory() && name.indexOf('/') < 0 && name.endsWith(".txt");
+    }
+
+    static String format(Map<String, String> entryHashes) {
+        return entryHashes.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining("\n"));
+    }
+
+    // One value for the whole listing, so feeds with the same files can be looked up by an indexed column
+    static String contentHash(Map<String, String> entryHashes) {
+        return HexFormat.of().formatHex(sha256().digest(format(entryHashes).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
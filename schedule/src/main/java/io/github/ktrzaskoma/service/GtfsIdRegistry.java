@@ -0,0 +1,38 @@
+package io.github.ktrzaskoma.service;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class GtfsIdRegistry<T> {
+
+    private final Class<T> entityType;
+    private final Map<String, Long> ids = new HashMap<>();
+
+    GtfsIdRegistry(Class<T> entityType) {
+        this.entityType = entityType;
+    }
+
+    void register(String gtfsId, Long id) {
+        ids.put(gtfsId, id);
+    }
+
+    Long get(String gtfsId) {
+        return ids.get(gtfsId);
+    }
+
+    boolean contains(String gtfsId) {
+        return ids.containsKey(gtfsId);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    // Returns an uninitialized proxy, so resolving a foreign key never issues a SELECT
+    T reference(EntityManager entityManager, String gtfsId) {
+        Long id = ids.get(gtfsId);
+        return id != null ? entityManager.getReference(entityType, id) : null;
+    }
+}
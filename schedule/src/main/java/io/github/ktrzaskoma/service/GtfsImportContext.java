@@ -0,0 +1,48 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.model.Agency;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.model.Route;
+import io.github.ktrzaskoma.model.Stop;
+import io.github.ktrzaskoma.model.Trip;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Each registry is filled by a single stage and only read by stages that run after it completes
+@Getter
+class GtfsImportContext {
+
+    private final GtfsUpload upload;
+    private final GtfsImportJob job;
+    private final GtfsIdRegistry<Agency> agencies = new GtfsIdRegistry<>(Agency.class);
+    private final GtfsIdRegistry<Stop> stops = new GtfsIdRegistry<>(Stop.class);
+    private final GtfsIdRegistry<Route> routes = new GtfsIdRegistry<>(Route.class);
+    private final GtfsIdRegistry<Trip> trips = new GtfsIdRegistry<>(Trip.class);
+
+    // Stop time hashes summed per trip surrogate id, written to the trips once all chunks are in
+    private final Map<Long, Long> stopTimesHashes = new ConcurrentHashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    GtfsImportContext(GtfsUpload upload, GtfsImportJob job) {
+        this.upload = upload;
+        this.job = job;
+    }
+
+    void fail(Exception e) {
+        failure.compareAndSet(null, e);
+    }
+
+    Exception getFailure() {
+        return failure.get();
+    }
+
+    boolean isAborted() {
+        return failure.get() != null;
+    }
+}
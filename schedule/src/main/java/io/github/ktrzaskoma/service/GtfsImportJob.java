@@ -0,0 +1,92 @@
+package io.github.ktrzaskoma.service;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Getter
+class GtfsImportJob {
+
+    enum Status { QUEUED, VALIDATING, IMPORTING, ACTIVATING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String filename;
+    private final Long userId;
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final Set<String> activeFiles = ConcurrentHashMap.newKeySet();
+    private final Map<String, LongAdder> rows = new LinkedHashMap<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Long uploadId;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile String message;
+
+    GtfsImportJob(String id, String filename, Long userId, List<String> files) {
+        this.id = id;
+        this.filename = filename;
+        this.userId = userId;
+        // Keys are fixed up front so that workers only ever increment existing counters
+        files.forEach(file -> rows.put(file, new LongAdder()));
+    }
+
+    void start(Long uploadId) {
+        this.uploadId = uploadId;
+        this.startedAt = LocalDateTime.now();
+        this.startNanos = System.nanoTime();
+        this.status = Status.VALIDATING;
+    }
+
+    void moveTo(Status status) {
+        this.status = status;
+    }
+
+    void startFile(String file) {
+        activeFiles.add(file);
+    }
+
+    void finishFile(String file) {
+        activeFiles.remove(file);
+    }
+
+    void addRows(String file, int count) {
+        rows.get(file).add(count);
+    }
+
+    void complete(String message) {
+        finish(Status.COMPLETED, message);
+    }
+
+    void fail(String message) {
+        finish(Status.FAILED, message);
+    }
+
+    private void finish(Status status, String message) {
+        this.finishedAt = LocalDateTime.now();
+        this.finishNanos = System.nanoTime();
+        this.message = message;
+        this.activeFiles.clear();
+        this.status = status;
+    }
+
+    long totalRows() {
+        return rows.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    long rowsPerSecond() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        long elapsedMillis = Math.max(1, (end - startNanos) / 1_000_000);
+        return totalRows() * 1000L / elapsedMillis;
+    }
+}
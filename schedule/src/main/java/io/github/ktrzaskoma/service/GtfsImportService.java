@@ -1,38 +1,55 @@
 package io.github.ktrzaskoma.service;
 
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
+import io.github.ktrzaskoma.dto.GtfsImportJobDto;
+import io.github.ktrzaskoma.exception.ImportJobNotFoundException;
+import io.github.ktrzaskoma.exception.ImportRejectedException;
 import io.github.ktrzaskoma.model.Agency;
 import io.github.ktrzaskoma.repository.AgencyRepository;
 import io.github.ktrzaskoma.model.CalendarDate;
 import io.github.ktrzaskoma.repository.CalendarDateRepository;
+import io.github.ktrzaskoma.repository.GtfsBulkLoader;
 import io.github.ktrzaskoma.model.Route;
 import io.github.ktrzaskoma.repository.RouteRepository;
 import io.github.ktrzaskoma.model.Stop;
 import io.github.ktrzaskoma.repository.StopRepository;
 import io.github.ktrzaskoma.model.StopTime;
 import io.github.ktrzaskoma.repository.StopTimeRepository;
+import io.github.ktrzaskoma.repository.ServiceCalendarRepository;
+import io.github.ktrzaskoma.model.Transfer;
+import io.github.ktrzaskoma.repository.TransferRepository;
 import io.github.ktrzaskoma.model.Trip;
 import io.github.ktrzaskoma.repository.TripRepository;
+import io.github.ktrzaskoma.model.WeeklyCalendar;
+import io.github.ktrzaskoma.repository.WeeklyCalendarRepository;
 import io.github.ktrzaskoma.model.GtfsUpload;
 import io.github.ktrzaskoma.repository.GtfsUploadRepository;
-import jakarta.transaction.Transactional;
+import io.github.ktrzaskoma.model.GtfsUploadVersion;
+import io.github.ktrzaskoma.repository.GtfsUploadVersionRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
+
+import static io.github.ktrzaskoma.service.GtfsCsv.openReader;
 
 @Service
 @RequiredArgsConstructor
@@ -40,418 +57,788 @@ import java.util.zip.ZipInputStream;
 public class GtfsImportService {
 
     private final GtfsUploadRepository uploadRepository;
+    private final GtfsUploadVersionRepository versionRepository;
+    private final GtfsUploadService uploadService;
+    private final GtfsDiffImporter diffImporter;
     private final AgencyRepository agencyRepository;
     private final StopRepository stopRepository;
     private final RouteRepository routeRepository;
     private final TripRepository tripRepository;
     private final StopTimeRepository stopTimeRepository;
     private final CalendarDateRepository calendarDateRepository;
+    private final TransferRepository transferRepository;
+    private final WeeklyCalendarRepository weeklyCalendarRepository;
+    private final ServiceCalendarRepository serviceCalendarRepository;
+    private final ServiceCalendarService serviceCalendarService;
+    private final GtfsBulkLoader bulkLoader;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor gtfsImportExecutor;
+    private final ThreadPoolTaskExecutor gtfsJobExecutor;
+
+    @Value("${gtfs.import.bulk-load:true}")
+    private boolean bulkLoad;
+
+    @Value("${gtfs.import.parallelism:4}")
+    private int parallelism;
+
+    // Finished jobs are kept for polling until newer ones push them out
+    private final Map<String, GtfsImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GtfsImportJob> eldest) {
+            return size() > MAX_TRACKED_JOBS;
+        }
+    });
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
     private static final int BATCH_SIZE = 1000;
+    private static final int MAX_TRACKED_JOBS = 100;
 
-    @Transactional
-    public void importGtfsData(MultipartFile file, Long userId) throws Exception {
-        log.info("Starting GTFS import for file: {}", file.getOriginalFilename());
+    private static final List<String> REQUIRED_FILES = List.of(
+            "agency.txt", "stops.txt", "routes.txt",
+            "trips.txt", "stop_times.txt"
+    );
 
-        // Deactivate current active upload
-        uploadRepository.findByIsActiveTrue().ifPresent(upload -> {
-            upload.setIsActive(false);
-            uploadRepository.save(upload);
-            log.info("Deactivated previous upload: {}", upload.getId());
-        });
+    // Either one is enough, weekly patterns or explicit dates
+    private static final List<String> CALENDAR_FILES = List.of("calendar.txt", "calendar_dates.txt");
 
-        // Create new upload
-        GtfsUpload upload = GtfsUpload.builder()
-                .filename(file.getOriginalFilename())
-                .uploadedBy(userId)
-                .isActive(true)
-                .build();
-        upload = uploadRepository.save(upload);
-        log.info("Created new upload: {}", upload.getId());
+    // Required files plus the optional ones that are imported when present
+    private static final List<String> TRACKED_FILES = List.of(
+            "agency.txt", "stops.txt", "routes.txt",
+            "trips.txt", "stop_times.txt", "calendar.txt", "calendar_dates.txt", "transfers.txt"
+    );
+
+    public GtfsImportJobDto submitImport(MultipartFile file, Long userId, GtfsUpload.ImportMode mode) throws IOException {
+        // The multipart file does not outlive the request, so it is spooled before the job is queued
+        SpooledUpload spooled = spoolToTempFile(file);
+        GtfsImportJob job = new GtfsImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), userId, TRACKED_FILES);
+        jobs.put(job.getId(), job);
+
+        try {
+            gtfsJobExecutor.execute(() -> runImportJob(job, spooled, mode));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(spooled.file());
+            throw new ImportRejectedException("Another GTFS import is already in progress, try again later");
+        }
 
+        log.info("Queued GTFS import job {} for file: {}", job.getId(), job.getFilename());
+        return mapToDto(job);
+    }
+
+    public GtfsImportJobDto getImportJob(String jobId) {
+        GtfsImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ImportJobNotFoundException("Import job not found: " + jobId);
+        }
+        return mapToDto(job);
+    }
+
+    private void runImportJob(GtfsImportJob job, SpooledUpload spooled, GtfsUpload.ImportMode mode) {
         try {
-            Map<String, String> fileContents = extractZipContents(file);
+            job.complete(importGtfsData(job, spooled, mode));
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(spooled.file());
+            } catch (IOException e) {
+                log.warn("Could not delete spooled upload {}: {}", spooled.file(), e.getMessage());
+            }
+        }
+    }
+
+    private String importGtfsData(GtfsImportJob job, SpooledUpload spooled, GtfsUpload.ImportMode mode) throws Exception {
+        log.info("Starting GTFS import for file: {}", job.getFilename());
 
+        // A feed that was imported before is switched to instead of being parsed again
+        Optional<GtfsUpload> known = uploadRepository.findFirstByArchiveSha256AndStatusOrderByUploadDateDesc(
+                spooled.archiveSha256(), GtfsUpload.UploadStatus.READY);
+        if (known.isPresent()) {
+            return reuseUpload(job, known.get());
+        }
+
+        try (ZipFile zip = new ZipFile(spooled.file().toFile(), StandardCharsets.UTF_8)) {
+            Map<String, String> entryHashes = GtfsFeedDigest.entryHashes(zip);
+            String contentSha256 = GtfsFeedDigest.contentHash(entryHashes);
+            known = uploadRepository.findFirstByContentSha256AndStatusOrderByUploadDateDesc(
+                    contentSha256, GtfsUpload.UploadStatus.READY);
+            if (known.isPresent()) {
+                return reuseUpload(job, known.get());
+            }
+
+            GtfsUpload base = mode == GtfsUpload.ImportMode.DIFF ? findDiffBase() : null;
+
+            // Create new upload, it stays inactive until every file has been imported and validated
+            GtfsUpload upload = GtfsUpload.builder()
+                    .filename(job.getFilename())
+                    .uploadedBy(job.getUserId())
+                    .isActive(false)
+                    .status(GtfsUpload.UploadStatus.LOADING)
+                    .importMode(base != null ? GtfsUpload.ImportMode.DIFF : GtfsUpload.ImportMode.FULL)
+                    .baseUploadId(base != null ? base.getId() : null)
+                    .archiveSha256(spooled.archiveSha256())
+                    .contentSha256(contentSha256)
+                    .entrySha256(GtfsFeedDigest.format(entryHashes))
+                    .build();
+            upload = uploadRepository.save(upload);
+            job.start(upload.getId());
+            log.info("Created new upload: {}", upload.getId());
+
+            return importIntoUpload(zip, job, upload, base);
+        }
+    }
+
+    private String reuseUpload(GtfsImportJob job, GtfsUpload upload) {
+        job.start(upload.getId());
+        if (Boolean.TRUE.equals(upload.getIsActive())) {
+            log.info("Feed {} is identical to the active upload {}, nothing to import", job.getFilename(), upload.getId());
+            return "No changes, the feed is identical to the active upload " + upload.getId();
+        }
+
+        job.moveTo(GtfsImportJob.Status.ACTIVATING);
+        uploadService.activateUpload(upload.getId());
+        log.info("Feed {} is identical to upload {}, re-activated it", job.getFilename(), upload.getId());
+        return "Feed is identical to upload " + upload.getId() + ", re-activated it without importing";
+    }
+
+    private String importIntoUpload(ZipFile zip, GtfsImportJob job, GtfsUpload upload, GtfsUpload base) {
+        try {
             // Validate required files
-            validateGtfsFiles(fileContents);
+            validateGtfsFiles(zip);
+
+            job.moveTo(GtfsImportJob.Status.IMPORTING);
+            GtfsImportContext context = new GtfsImportContext(upload, job);
+            List<Long> baseVersionIds = base != null ? versionRepository.findVersionIds(base.getId()) : List.of();
+            recordVersions(upload, baseVersionIds);
 
-            // Import data in correct order
-            importAgency(fileContents.get("agency.txt"), upload);
-            importStops(fileContents.get("stops.txt"), upload);
-            importRoutes(fileContents.get("routes.txt"), upload);
-            importTrips(fileContents.get("trips.txt"), upload);
-            importStopTimes(fileContents.get("stop_times.txt"), upload);
-            importCalendarDates(fileContents.get("calendar_dates.txt"), upload);
+            String message = base != null
+                    ? diffImporter.importDiff(zip, context, baseVersionIds)
+                    : importFull(zip, context);
 
+            job.moveTo(GtfsImportJob.Status.VALIDATING);
+            validateImportedData(upload);
+
+            job.moveTo(GtfsImportJob.Status.ACTIVATING);
+            compileServiceCalendars(upload);
+            uploadService.activateUpload(upload.getId());
             log.info("GTFS import completed successfully for upload: {}", upload.getId());
+            return message;
         } catch (Exception e) {
             log.error("Error during GTFS import", e);
-            upload.setIsActive(false);
-            uploadRepository.save(upload);
+            try {
+                purgeUpload(upload);
+            } catch (RuntimeException purgeFailure) {
+                log.error("Could not remove data of failed upload {}, left to retention", upload.getId(), purgeFailure);
+                markFailed(upload);
+            }
             throw new RuntimeException("Failed to import GTFS data: " + e.getMessage(), e);
         }
     }
 
-    private Map<String, String> extractZipContents(MultipartFile file) throws IOException {
-        Map<String, String> fileContents = new HashMap<>();
+    private GtfsUpload findDiffBase() {
+        // Rows can be retired by one upload only, so changes are always stacked on the newest version
+        Optional<GtfsUpload> active = uploadRepository.findByIsActiveTrue();
+        if (active.isEmpty()) {
+            log.warn("No active upload to compare against, importing the full feed");
+            return null;
+        }
+        if (uploadRepository.hasNewerVersion(active.get().getId())) {
+            log.warn("Active upload {} already has a newer version, importing the full feed", active.get().getId());
+            return null;
+        }
+        return active.get();
+    }
+
+    private void recordVersions(GtfsUpload upload, List<Long> baseVersionIds) {
+        List<Long> versionIds = new ArrayList<>(baseVersionIds);
+        versionIds.add(upload.getId());
+        versionRepository.saveAll(versionIds.stream()
+                .map(versionId -> GtfsUploadVersion.builder().upload(upload).versionId(versionId).build())
+                .collect(Collectors.toList()));
+    }
+
+    private String importFull(ZipFile zip, GtfsImportContext context) throws Exception {
+        // Import files as a dependency graph, independent files run concurrently
+        GtfsImportJob job = context.getJob();
+        CompletableFuture<Void> agency = runStage(context, "agency.txt", () -> importAgency(zip, context));
+        CompletableFuture<Void> stops = runStage(context, "stops.txt", () -> importStops(zip, context));
+        CompletableFuture<Void> weeklyCalendars = zip.getEntry("calendar.txt") != null
+                ? runStage(context, "calendar.txt", () -> importWeeklyCalendars(zip, context))
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> calendarDates = zip.getEntry("calendar_dates.txt") != null
+                ? runStage(context, "calendar_dates.txt", () -> importCalendarDates(zip, context))
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> routes = runStage(context, "routes.txt", () -> importRoutes(zip, context), agency);
+        CompletableFuture<Void> trips = runStage(context, "trips.txt", () -> importTrips(zip, context), routes);
+        CompletableFuture<Void> transfers = zip.getEntry("transfers.txt") != null
+                ? runStage(context, "transfers.txt", () -> importTransfers(zip, context))
+                : CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(
+                agency, stops, weeklyCalendars, calendarDates, routes, trips, transfers);
+        try {
+            CompletableFuture.allOf(stops, trips).join();
+            job.startFile("stop_times.txt");
+            importStopTimes(zip, context);
+            job.finishFile("stop_times.txt");
+            all.join();
+        } catch (Exception e) {
+            // Stages without dependencies may still be writing, the purge must not run before they commit
+            context.fail(e);
+            all.exceptionally(failure -> null).join();
+            // Report the failure that aborted the import, not a stage that was cancelled because of it
+            throw context.getFailure();
+        }
+        return "GTFS data imported successfully";
+    }
+
+    private CompletableFuture<Void> runStage(GtfsImportContext context, String fileName, ImportStage stage,
+                                             CompletableFuture<?>... dependencies) {
+        return CompletableFuture.allOf(dependencies)
+                .thenRunAsync(() -> {
+                    context.getJob().startFile(fileName);
+                    runInTransaction(context, fileName, stage);
+                    context.getJob().finishFile(fileName);
+                }, gtfsImportExecutor);
+    }
 
-        try (ZipInputStream zis = new ZipInputStream(file.getInputStream())) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory() && entry.getName().endsWith(".txt")) {
-                    byte[] buffer = zis.readAllBytes();
-                    String content = new String(buffer, StandardCharsets.UTF_8);
-                    fileContents.put(entry.getName(), content);
+    private void runInTransaction(GtfsImportContext context, String fileName, ImportStage stage) {
+        if (context.isAborted()) {
+            throw new CancellationException("Import aborted before " + fileName);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    stage.run();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to import " + fileName + ": " + e.getMessage(), e);
                 }
-            }
+            });
+        } catch (RuntimeException e) {
+            context.fail(e);
+            throw e;
         }
-        return fileContents;
     }
 
-    private void validateGtfsFiles(Map<String, String> fileContents) {
-        List<String> requiredFiles = Arrays.asList(
-                "agency.txt", "stops.txt", "routes.txt",
-                "trips.txt", "stop_times.txt", "calendar_dates.txt"
-        );
+    private void validateImportedData(GtfsUpload upload) {
+        // Checked before the switch so that a broken feed never replaces a working timetable
+        List<Long> versionIds = versionRepository.findVersionIds(upload.getId());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("stops", stopRepository.countVisible(versionIds));
+        counts.put("trips", tripRepository.countVisible(versionIds));
+        counts.put("stop times", stopTimeRepository.countVisible(versionIds));
+        counts.put("service calendars", weeklyCalendarRepository.countVisible(versionIds)
+                + calendarDateRepository.countVisible(versionIds));
+
+        List<String> empty = counts.entrySet().stream()
+                .filter(entry -> entry.getValue() == 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
 
-        List<String> missingFiles = requiredFiles.stream()
-                .filter(file -> !fileContents.containsKey(file))
+        if (!empty.isEmpty()) {
+            throw new IllegalStateException("Imported feed contains no " + String.join(", ", empty));
+        }
+
+        upload.setStatus(GtfsUpload.UploadStatus.READY);
+        uploadRepository.save(upload);
+    }
+
+    private void compileServiceCalendars(GtfsUpload upload) {
+        // Done before the switch, queries against the active upload only ever see complete calendars
+        transactionTemplate.executeWithoutResult(status -> serviceCalendarService.compile(upload));
+    }
+
+    private void purgeUpload(GtfsUpload upload) {
+        // Stages commit independently, so a failed import is rolled back by deleting everything it wrote
+        transactionTemplate.executeWithoutResult(status -> {
+            Long uploadId = upload.getId();
+            stopTimeRepository.restoreRetiredBy(uploadId);
+            weeklyCalendarRepository.restoreRetiredBy(uploadId);
+            calendarDateRepository.restoreRetiredBy(uploadId);
+            transferRepository.restoreRetiredBy(uploadId);
+            tripRepository.restoreRetiredBy(uploadId);
+            routeRepository.restoreRetiredBy(uploadId);
+            stopRepository.restoreRetiredBy(uploadId);
+            agencyRepository.restoreRetiredBy(uploadId);
+            versionRepository.deleteByUploadId(uploadId);
+            serviceCalendarRepository.deleteByUploadId(uploadId);
+            stopTimeRepository.deleteByUploadId(uploadId);
+            weeklyCalendarRepository.deleteByUploadId(uploadId);
+            calendarDateRepository.deleteByUploadId(uploadId);
+            transferRepository.deleteByUploadId(uploadId);
+            tripRepository.deleteByUploadId(uploadId);
+            routeRepository.deleteByUploadId(uploadId);
+            stopRepository.deleteByUploadId(uploadId);
+            agencyRepository.deleteByUploadId(uploadId);
+            upload.setIsActive(false);
+            upload.setStatus(GtfsUpload.UploadStatus.FAILED);
+            upload.setPurgedAt(LocalDateTime.now());
+            uploadRepository.save(upload);
+        });
+        log.info("Removed data of failed upload: {}", upload.getId());
+    }
+
+    private void markFailed(GtfsUpload upload) {
+        // Rows left behind by a purge that did not go through are removed by the retention sweep
+        transactionTemplate.executeWithoutResult(status -> uploadRepository.findById(upload.getId())
+                .ifPresent(failed -> {
+                    failed.setIsActive(false);
+                    failed.setStatus(GtfsUpload.UploadStatus.FAILED);
+                    failed.setPurgedAt(null);
+                    uploadRepository.save(failed);
+                }));
+    }
+
+    private SpooledUpload spoolToTempFile(MultipartFile file) throws IOException {
+        // ZipFile needs random access, so the upload is written to disk instead of being held in memory
+        Path tempFile = Files.createTempFile("gtfs-upload-", ".zip");
+        try {
+            return new SpooledUpload(tempFile, GtfsFeedDigest.copyAndHash(file.getInputStream(), tempFile));
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private void validateGtfsFiles(ZipFile zip) {
+        List<String> missingFiles = REQUIRED_FILES.stream()
+                .filter(file -> isMissing(zip, file))
                 .collect(Collectors.toList());
 
         if (!missingFiles.isEmpty()) {
             throw new IllegalArgumentException("Missing required GTFS files: " + missingFiles);
         }
+        if (CALENDAR_FILES.stream().allMatch(file -> isMissing(zip, file))) {
+            throw new IllegalArgumentException("Missing required GTFS files: one of " + CALENDAR_FILES);
+        }
     }
 
-    private void importAgency(String content, GtfsUpload upload) throws Exception {
-        log.info("Importing agencies...");
+    private boolean isMissing(ZipFile zip, String file) {
+        ZipEntry entry = zip.getEntry(file);
+        return entry == null || entry.isDirectory();
+    }
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
+    private void importAgency(ZipFile zip, GtfsImportContext context) throws Exception {
+        log.info("Importing agencies...");
 
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
+        try (GtfsReader reader = openReader(zip, "agency.txt")) {
+            GtfsCsv.AgencyColumns columns = GtfsCsv.AgencyColumns.of(reader);
 
-            String[] line;
             int count = 0;
             List<Agency> agencies = new ArrayList<>();
 
-            while ((line = reader.readNext()) != null) {
-                Agency agency = Agency.builder()
-                        .agencyId(getFieldValue(line, headerMap, "agency_id", "default"))
-                        .agencyName(getFieldValue(line, headerMap, "agency_name"))
-                        .agencyUrl(getFieldValue(line, headerMap, "agency_url"))
-                        .agencyLang(getFieldValue(line, headerMap, "agency_lang", "en"))
-                        .agencyTimezone(getFieldValue(line, headerMap, "agency_timezone"))
-                        .upload(upload)
-                        .build();
+            while (reader.next()) {
+                Agency agency = columns.read(reader);
+                agency.setUpload(context.getUpload());
                 agencies.add(agency);
 
                 if (agencies.size() >= BATCH_SIZE) {
-                    agencyRepository.saveAll(agencies);
-                    agencies.clear();
+                    saveAgencies(agencies, context);
                 }
                 count++;
             }
 
             if (!agencies.isEmpty()) {
-                agencyRepository.saveAll(agencies);
+                saveAgencies(agencies, context);
             }
 
             log.info("Imported {} agencies", count);
         }
     }
 
-    private void importStops(String content, GtfsUpload upload) throws Exception {
+    private void importStops(ZipFile zip, GtfsImportContext context) throws Exception {
         log.info("Importing stops...");
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
-
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
+        try (GtfsReader reader = openReader(zip, "stops.txt")) {
+            GtfsCsv.StopColumns columns = GtfsCsv.StopColumns.of(reader);
 
-            String[] line;
             int count = 0;
             List<Stop> stops = new ArrayList<>();
 
-            while ((line = reader.readNext()) != null) {
+            while (reader.next()) {
                 try {
-                    Stop stop = Stop.builder()
-                            .stopId(getFieldValue(line, headerMap, "stop_id"))
-                            .stopName(getFieldValue(line, headerMap, "stop_name"))
-                            .stopLat(new BigDecimal(getFieldValue(line, headerMap, "stop_lat")))
-                            .stopLon(new BigDecimal(getFieldValue(line, headerMap, "stop_lon")))
-                            .wheelchairBoarding(parseIntegerField(getFieldValue(line, headerMap, "wheelchair_boarding", "0")))
-                            .upload(upload)
-                            .build();
+                    Stop stop = columns.read(reader);
+                    stop.setUpload(context.getUpload());
                     stops.add(stop);
 
                     if (stops.size() >= BATCH_SIZE) {
-                        stopRepository.saveAll(stops);
-                        stops.clear();
+                        saveStops(stops, context);
                     }
                     count++;
                 } catch (Exception e) {
-                    log.warn("Error importing stop at line {}: {}", count + 2, e.getMessage());
+                    log.warn("Error importing stop at line {}: {}", reader.getLineNumber(), e.getMessage());
                 }
             }
 
             if (!stops.isEmpty()) {
-                stopRepository.saveAll(stops);
+                saveStops(stops, context);
             }
 
             log.info("Imported {} stops", count);
         }
     }
 
-    private void importRoutes(String content, GtfsUpload upload) throws Exception {
+    private void importRoutes(ZipFile zip, GtfsImportContext context) throws Exception {
         log.info("Importing routes...");
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
+        try (GtfsReader reader = openReader(zip, "routes.txt")) {
+            GtfsCsv.RouteColumns columns = GtfsCsv.RouteColumns.of(reader);
 
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
-
-            String[] line;
             int count = 0;
             List<Route> routes = new ArrayList<>();
 
-            while ((line = reader.readNext()) != null) {
+            while (reader.next()) {
                 try {
-                    String agencyId = getFieldValue(line, headerMap, "agency_id", "default");
-                    Agency agency = agencyRepository.findById(agencyId).orElse(null);
-
-                    Route route = Route.builder()
-                            .routeId(getFieldValue(line, headerMap, "route_id"))
-                            .agency(agency)
-                            .routeShortName(getFieldValue(line, headerMap, "route_short_name", ""))
-                            .routeLongName(getFieldValue(line, headerMap, "route_long_name", ""))
-                            .routeType(parseIntegerField(getFieldValue(line, headerMap, "route_type")))
-                            .routeColor(getFieldValue(line, headerMap, "route_color", "FFFFFF"))
-                            .routeTextColor(getFieldValue(line, headerMap, "route_text_color", "000000"))
-                            .upload(upload)
-                            .build();
+                    Agency agency = context.getAgencies().reference(entityManager, columns.agencyId(reader));
+
+                    Route route = columns.read(reader);
+                    route.setAgency(agency);
+                    route.setUpload(context.getUpload());
                     routes.add(route);
 
                     if (routes.size() >= BATCH_SIZE) {
-                        routeRepository.saveAll(routes);
-                        routes.clear();
+                        saveRoutes(routes, context);
                     }
                     count++;
                 } catch (Exception e) {
-                    log.warn("Error importing route at line {}: {}", count + 2, e.getMessage());
+                    log.warn("Error importing route at line {}: {}", reader.getLineNumber(), e.getMessage());
                 }
             }
 
             if (!routes.isEmpty()) {
-                routeRepository.saveAll(routes);
+                saveRoutes(routes, context);
             }
 
             log.info("Imported {} routes", count);
         }
     }
 
-    private void importTrips(String content, GtfsUpload upload) throws Exception {
+    private void importTrips(ZipFile zip, GtfsImportContext context) throws Exception {
         log.info("Importing trips...");
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
-
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
+        try (GtfsReader reader = openReader(zip, "trips.txt")) {
+            GtfsCsv.TripColumns columns = GtfsCsv.TripColumns.of(reader);
 
-            String[] line;
             int count = 0;
             List<Trip> trips = new ArrayList<>();
 
-            while ((line = reader.readNext()) != null) {
+            while (reader.next()) {
                 try {
-                    String routeId = getFieldValue(line, headerMap, "route_id");
-                    Route route = routeRepository.findById(routeId).orElse(null);
+                    Route route = context.getRoutes().reference(entityManager, columns.routeId(reader));
 
                     if (route != null) {
-                        Trip trip = Trip.builder()
-                                .tripId(getFieldValue(line, headerMap, "trip_id"))
-                                .route(route)
-                                .serviceId(getFieldValue(line, headerMap, "service_id"))
-                                .tripHeadsign(getFieldValue(line, headerMap, "trip_headsign", ""))
-                                .tripShortName(getFieldValue(line, headerMap, "trip_short_name", ""))
-                                .directionId(parseIntegerField(getFieldValue(line, headerMap, "direction_id", "0")))
-                                .shapeId(getFieldValue(line, headerMap, "shape_id", ""))
-                                .wheelchairAccessible(parseIntegerField(getFieldValue(line, headerMap, "wheelchair_accessible", "0")))
-                                .bikesAllowed(parseIntegerField(getFieldValue(line, headerMap, "bikes_allowed", "0")))
-                                .upload(upload)
-                                .build();
+                        Trip trip = columns.read(reader);
+                        trip.setRoute(route);
+                        trip.setUpload(context.getUpload());
                         trips.add(trip);
 
                         if (trips.size() >= BATCH_SIZE) {
-                            tripRepository.saveAll(trips);
-                            trips.clear();
+                            saveTrips(trips, context);
                         }
                         count++;
                     }
                 } catch (Exception e) {
-                    log.warn("Error importing trip at line {}: {}", count + 2, e.getMessage());
+                    log.warn("Error importing trip at line {}: {}", reader.getLineNumber(), e.getMessage());
                 }
             }
 
             if (!trips.isEmpty()) {
-                tripRepository.saveAll(trips);
+                saveTrips(trips, context);
             }
 
             log.info("Imported {} trips", count);
         }
     }
 
-    private void importStopTimes(String content, GtfsUpload upload) throws Exception {
+    private void importStopTimes(ZipFile zip, GtfsImportContext context) throws Exception {
         log.info("Importing stop times...");
+        long startTime = System.nanoTime();
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
+        // Rows are tokenized sequentially and handed out in chunks, workers resolve and insert them in parallel
+        AtomicInteger count = new AtomicInteger();
+        Semaphore chunksInFlight = new Semaphore(parallelism * 2);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
 
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
-
-            String[] line;
-            int count = 0;
-            List<StopTime> stopTimes = new ArrayList<>();
+        try (GtfsReader reader = openReader(zip, "stop_times.txt")) {
+            GtfsCsv.StopTimeColumns columns = GtfsCsv.StopTimeColumns.of(reader);
+            List<StopTimeRow> rows = new ArrayList<>(BATCH_SIZE);
 
-            while ((line = reader.readNext()) != null) {
+            while (!context.isAborted() && reader.next()) {
                 try {
-                    String tripId = getFieldValue(line, headerMap, "trip_id");
-                    String stopId = getFieldValue(line, headerMap, "stop_id");
-
-                    Trip trip = tripRepository.findById(tripId).orElse(null);
-                    Stop stop = stopRepository.findById(stopId).orElse(null);
-
-                    if (trip != null && stop != null) {
-                        StopTime stopTime = StopTime.builder()
-                                .trip(trip)
-                                .stop(stop)
-                                .stopSequence(parseIntegerField(getFieldValue(line, headerMap, "stop_sequence")))
-                                .arrivalTime(parseTime(getFieldValue(line, headerMap, "arrival_time")))
-                                .departureTime(parseTime(getFieldValue(line, headerMap, "departure_time")))
-                                .upload(upload)
-                                .build();
-                        stopTimes.add(stopTime);
-
-                        if (stopTimes.size() >= BATCH_SIZE) {
-                            stopTimeRepository.saveAll(stopTimes);
-                            stopTimes.clear();
-                        }
-                        count++;
-                    }
+                    rows.add(new StopTimeRow(columns.tripId(reader), columns.stopId(reader), columns.read(reader)));
                 } catch (Exception e) {
-                    log.warn("Error importing stop time at line {}: {}", count + 2, e.getMessage());
+                    log.warn("Error importing stop time at line {}: {}", reader.getLineNumber(), e.getMessage());
+                }
+
+                if (rows.size() >= BATCH_SIZE) {
+                    chunks.add(submitStopTimeChunk(context, rows, count, chunksInFlight));
+                    rows = new ArrayList<>(BATCH_SIZE);
                 }
             }
 
-            if (!stopTimes.isEmpty()) {
-                stopTimeRepository.saveAll(stopTimes);
+            if (!rows.isEmpty()) {
+                chunks.add(submitStopTimeChunk(context, rows, count, chunksInFlight));
+            }
+        } catch (Exception e) {
+            // Chunks already handed out finish before the failure is reported, so none commits after a purge
+            context.fail(e);
+            CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).exceptionally(failure -> null).join();
+            throw e;
+        }
+
+        CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).join();
+        transactionTemplate.executeWithoutResult(status -> bulkLoader.updateStopTimesHashes(context.getStopTimesHashes()));
+        logThroughput("stop times", count.get(), startTime);
+    }
+
+    private CompletableFuture<Void> submitStopTimeChunk(GtfsImportContext context, List<StopTimeRow> rows,
+                                                        AtomicInteger count, Semaphore chunksInFlight)
+            throws InterruptedException {
+        chunksInFlight.acquire();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                runInTransaction(context, "stop_times.txt", () -> {
+                    int imported = importStopTimeChunk(context, rows);
+                    count.addAndGet(imported);
+                    context.getJob().addRows("stop_times.txt", imported);
+                });
+            } finally {
+                chunksInFlight.release();
+            }
+        }, gtfsImportExecutor);
+    }
+
+    private int importStopTimeChunk(GtfsImportContext context, List<StopTimeRow> rows) {
+        List<StopTime> stopTimes = new ArrayList<>(rows.size());
+
+        for (StopTimeRow row : rows) {
+            Trip trip = context.getTrips().reference(entityManager, row.tripId());
+            Stop stop = context.getStops().reference(entityManager, row.stopId());
+
+            if (trip != null && stop != null) {
+                StopTime stopTime = row.stopTime();
+                stopTime.setTrip(trip);
+                stopTime.setStop(stop);
+                stopTime.setUpload(context.getUpload());
+                stopTimes.add(stopTime);
+                context.getStopTimesHashes().merge(trip.getId(), GtfsCsv.stopTimeHash(row.stopId(), stopTime), Long::sum);
             }
+        }
 
-            log.info("Imported {} stop times", count);
+        int imported = stopTimes.size();
+        if (!stopTimes.isEmpty()) {
+            saveStopTimes(stopTimes);
         }
+        return imported;
     }
 
-    private void importCalendarDates(String content, GtfsUpload upload) throws Exception {
+    private void importCalendarDates(ZipFile zip, GtfsImportContext context) throws Exception {
         log.info("Importing calendar dates...");
+        long startTime = System.nanoTime();
 
-        try (CSVReader reader = new CSVReaderBuilder(new StringReader(content))
-                .withSkipLines(0)
-                .build()) {
-
-            String[] headers = reader.readNext();
-            Map<String, Integer> headerMap = createHeaderMap(headers);
+        try (GtfsReader reader = openReader(zip, "calendar_dates.txt")) {
+            GtfsCsv.CalendarDateColumns columns = GtfsCsv.CalendarDateColumns.of(reader);
 
-            String[] line;
             int count = 0;
             List<CalendarDate> calendarDates = new ArrayList<>();
 
-            while ((line = reader.readNext()) != null) {
+            while (reader.next()) {
                 try {
-                    CalendarDate calendarDate = CalendarDate.builder()
-                            .serviceId(getFieldValue(line, headerMap, "service_id"))
-                            .date(LocalDate.parse(getFieldValue(line, headerMap, "date"), DATE_FORMATTER))
-                            .exceptionType(parseIntegerField(getFieldValue(line, headerMap, "exception_type")))
-                            .upload(upload)
-                            .build();
+                    CalendarDate calendarDate = columns.read(reader);
+                    calendarDate.setUpload(context.getUpload());
                     calendarDates.add(calendarDate);
 
                     if (calendarDates.size() >= BATCH_SIZE) {
-                        calendarDateRepository.saveAll(calendarDates);
-                        calendarDates.clear();
+                        saveCalendarDates(calendarDates, context);
                     }
                     count++;
                 } catch (Exception e) {
-                    log.warn("Error importing calendar date at line {}: {}", count + 2, e.getMessage());
+                    log.warn("Error importing calendar date at line {}: {}", reader.getLineNumber(), e.getMessage());
                 }
             }
 
             if (!calendarDates.isEmpty()) {
-                calendarDateRepository.saveAll(calendarDates);
+                saveCalendarDates(calendarDates, context);
             }
 
-            log.info("Imported {} calendar dates", count);
+            logThroughput("calendar dates", count, startTime);
         }
     }
 
-    private Map<String, Integer> createHeaderMap(String[] headers) {
-        Map<String, Integer> headerMap = new HashMap<>();
-        for (int i = 0; i < headers.length; i++) {
-            headerMap.put(headers[i].trim().toLowerCase(), i);
+    private void importWeeklyCalendars(ZipFile zip, GtfsImportContext context) throws Exception {
+        log.info("Importing calendars...");
+
+        try (GtfsReader reader = openReader(zip, "calendar.txt")) {
+            GtfsCsv.WeeklyCalendarColumns columns = GtfsCsv.WeeklyCalendarColumns.of(reader);
+
+            int count = 0;
+            List<WeeklyCalendar> weeklyCalendars = new ArrayList<>();
+
+            while (reader.next()) {
+                try {
+                    WeeklyCalendar weeklyCalendar = columns.read(reader);
+                    weeklyCalendar.setUpload(context.getUpload());
+                    weeklyCalendars.add(weeklyCalendar);
+
+                    if (weeklyCalendars.size() >= BATCH_SIZE) {
+                        saveWeeklyCalendars(weeklyCalendars, context);
+                    }
+                    count++;
+                } catch (Exception e) {
+                    log.warn("Error importing calendar at line {}: {}", reader.getLineNumber(), e.getMessage());
+                }
+            }
+
+            if (!weeklyCalendars.isEmpty()) {
+                saveWeeklyCalendars(weeklyCalendars, context);
+            }
+
+            log.info("Imported {} calendars", count);
         }
-        return headerMap;
     }
 
-    private String getFieldValue(String[] line, Map<String, Integer> headerMap, String fieldName) {
-        return getFieldValue(line, headerMap, fieldName, null);
-    }
+    private void importTransfers(ZipFile zip, GtfsImportContext context) throws Exception {
+        log.info("Importing transfers...");
 
-    private String getFieldValue(String[] line, Map<String, Integer> headerMap, String fieldName, String defaultValue) {
-        Integer index = headerMap.get(fieldName.toLowerCase());
-        if (index != null && index < line.length && line[index] != null && !line[index].trim().isEmpty()) {
-            return line[index].trim();
-        }
-        if (defaultValue != null) {
-            return defaultValue;
+        try (GtfsReader reader = openReader(zip, "transfers.txt")) {
+            GtfsCsv.TransferColumns columns = GtfsCsv.TransferColumns.of(reader);
+
+            int count = 0;
+            List<Transfer> transfers = new ArrayList<>();
+
+            while (reader.next()) {
+                try {
+                    Transfer transfer = columns.read(reader);
+                    transfer.setUpload(context.getUpload());
+                    transfers.add(transfer);
+
+                    if (transfers.size() >= BATCH_SIZE) {
+                        saveTransfers(transfers, context);
+                    }
+                    count++;
+                } catch (Exception e) {
+                    log.warn("Error importing transfer at line {}: {}", reader.getLineNumber(), e.getMessage());
+                }
+            }
+
+            if (!transfers.isEmpty()) {
+                saveTransfers(transfers, context);
+            }
+
+            log.info("Imported {} transfers", count);
         }
-        throw new IllegalArgumentException("Required field missing: " + fieldName);
     }
 
-    private Integer parseIntegerField(String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return null;
-        }
-        try {
-            return Integer.parseInt(value.trim());
-        } catch (NumberFormatException e) {
-            return null;
+    private void saveAgencies(List<Agency> agencies, GtfsImportContext context) {
+        agencyRepository.saveAll(agencies);
+        agencies.forEach(agency -> context.getAgencies().register(agency.getAgencyId(), agency.getId()));
+        context.getJob().addRows("agency.txt", agencies.size());
+        agencies.clear();
+        flushAndClear();
+    }
+
+    private void saveStops(List<Stop> stops, GtfsImportContext context) {
+        stopRepository.saveAll(stops);
+        stops.forEach(stop -> context.getStops().register(stop.getStopId(), stop.getId()));
+        context.getJob().addRows("stops.txt", stops.size());
+        stops.clear();
+        flushAndClear();
+    }
+
+    private void saveRoutes(List<Route> routes, GtfsImportContext context) {
+        routeRepository.saveAll(routes);
+        routes.forEach(route -> context.getRoutes().register(route.getRouteId(), route.getId()));
+        context.getJob().addRows("routes.txt", routes.size());
+        routes.clear();
+        flushAndClear();
+    }
+
+    private void saveTrips(List<Trip> trips, GtfsImportContext context) {
+        tripRepository.saveAll(trips);
+        trips.forEach(trip -> context.getTrips().register(trip.getTripId(), trip.getId()));
+        context.getJob().addRows("trips.txt", trips.size());
+        trips.clear();
+        flushAndClear();
+    }
+
+    private void saveStopTimes(List<StopTime> stopTimes) {
+        // Sequence ids are allocated in blocks, so either path writes whole batches without per-row round trips
+        if (bulkLoad) {
+            bulkLoader.insertStopTimes(stopTimes);
+        } else {
+            stopTimeRepository.saveAll(stopTimes);
+            flushAndClear();
         }
+        stopTimes.clear();
     }
 
-    private LocalTime parseTime(String timeStr) {
-        if (timeStr == null || timeStr.trim().isEmpty()) {
-            return null;
+    private void saveCalendarDates(List<CalendarDate> calendarDates, GtfsImportContext context) {
+        if (bulkLoad) {
+            bulkLoader.insertCalendarDates(calendarDates);
+        } else {
+            calendarDateRepository.saveAll(calendarDates);
+            flushAndClear();
         }
+        context.getJob().addRows("calendar_dates.txt", calendarDates.size());
+        calendarDates.clear();
+    }
 
-        // Handle times > 24:00:00 (e.g., 25:30:00 becomes 01:30:00)
-        String[] parts = timeStr.split(":");
-        int hours = Integer.parseInt(parts[0]);
-        int minutes = Integer.parseInt(parts[1]);
-        int seconds = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+    private void saveWeeklyCalendars(List<WeeklyCalendar> weeklyCalendars, GtfsImportContext context) {
+        weeklyCalendarRepository.saveAll(weeklyCalendars);
+        context.getJob().addRows("calendar.txt", weeklyCalendars.size());
+        weeklyCalendars.clear();
+        flushAndClear();
+    }
 
-        // Normalize hours to 0-23 range
-        hours = hours % 24;
+    private void saveTransfers(List<Transfer> transfers, GtfsImportContext context) {
+        transferRepository.saveAll(transfers);
+        context.getJob().addRows("transfers.txt", transfers.size());
+        transfers.clear();
+        flushAndClear();
+    }
+
+    private void logThroughput(String entityName, int count, long startTime) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        log.info("Imported {} {} in {} ms ({} rows/s, {} path)", count, entityName, elapsedMillis,
+                count * 1000L / elapsedMillis, bulkLoad ? "jdbc" : "jpa");
+    }
+
+    private void flushAndClear() {
+        // Keeps the persistence context bounded; registries hold ids, not managed entities
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private GtfsImportJobDto mapToDto(GtfsImportJob job) {
+        Map<String, Long> rowsProcessed = new LinkedHashMap<>();
+        job.getRows().forEach((file, rows) -> rowsProcessed.put(file, rows.sum()));
+
+        return GtfsImportJobDto.builder()
+                .jobId(job.getId())
+                .filename(job.getFilename())
+                .status(job.getStatus().name())
+                .activeFiles(List.copyOf(job.getActiveFiles()))
+                .rowsProcessed(rowsProcessed)
+                .rowsPerSecond(job.rowsPerSecond())
+                .uploadId(job.getUploadId())
+                .submittedAt(job.getSubmittedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .message(job.getMessage())
+                .build();
+    }
+
+    private record SpooledUpload(Path file, String archiveSha256) {
+    }
+
+    // Parsed on the reading thread, the references are resolved by the worker that inserts the chunk
+    private record StopTimeRow(String tripId, String stopId, StopTime stopTime) {
+    }
 
-        return LocalTime.of(hours, minutes, seconds);
+    @FunctionalInterface
+    private interface ImportStage {
+        void run() throws Exception;
     }
-}
\ No newline at end of file
+}
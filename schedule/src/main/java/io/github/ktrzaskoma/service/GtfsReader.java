@@ -0,0 +1,341 @@
+package io.github.ktrzaskoma.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Streaming reader for GTFS text files. Records are unescaped into a reused char buffer and fields are only
+// turned into objects when asked for, so a row that is skipped or only partly read allocates next to nothing.
+final class GtfsReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private int lineNumber;
+
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final StringPool ids = new StringPool();
+
+    GtfsReader(Reader reader) throws IOException {
+        this.reader = reader;
+        if (peek() == BYTE_ORDER_MARK) {
+            position++;
+        }
+        if (next()) {
+            for (int i = 0; i < fieldCount; i++) {
+                columns.putIfAbsent(new String(record, fieldStarts[i], fieldEnds[i] - fieldStarts[i]).toLowerCase(), i);
+            }
+        }
+    }
+
+    // Resolved once per file, -1 when the file has no such column
+    int column(String name) {
+        return columns.getOrDefault(name, -1);
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    boolean next() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+            lineNumber++;
+            readRecord(c);
+            if (fieldCount > 1 || fieldEnds[0] > fieldStarts[0]) {
+                return true;
+            }
+        }
+    }
+
+    boolean isPresent(int column) {
+        return column >= 0 && column < fieldCount && fieldEnds[column] > fieldStarts[column];
+    }
+
+    String required(int column, String name) {
+        requirePresent(column, name);
+        return new String(record, fieldStarts[column], fieldEnds[column] - fieldStarts[column]);
+    }
+
+    String optional(int column, String defaultValue) {
+        return isPresent(column)
+                ? new String(record, fieldStarts[column], fieldEnds[column] - fieldStarts[column])
+                : defaultValue;
+    }
+
+    // Ids repeat on almost every row of the larger files, equal values come back as the same instance
+    String requiredId(int column, String name) {
+        requirePresent(column, name);
+        return ids.intern(record, fieldStarts[column], fieldEnds[column] - fieldStarts[column]);
+    }
+
+    // Null when the field is missing or not a number, like the lenient integer columns of the spec
+    Integer integer(int column) {
+        if (!isPresent(column)) {
+            return null;
+        }
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        boolean negative = record[start] == '-';
+        if (negative || record[start] == '+') {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            return null;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    Integer requiredInteger(int column, String name) {
+        requirePresent(column, name);
+        return integer(column);
+    }
+
+    Integer integer(int column, int defaultValue) {
+        return isPresent(column) ? integer(column) : Integer.valueOf(defaultValue);
+    }
+
+    // Seconds since the start of the service day, H:MM:SS with hours past 24 allowed
+    int seconds(int column, String name) {
+        requirePresent(column, name);
+        int value = 0;
+        int time = 0;
+        int separators = 0;
+        int digits = 0;
+        for (int i = fieldStarts[column]; i < fieldEnds[column]; i++) {
+            char c = record[i];
+            if (c >= '0' && c <= '9' && digits < 6) {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == ':' && separators < 2 && digits > 0 && (separators == 0 || value < 60)) {
+                time = time * 60 + value;
+                value = 0;
+                digits = 0;
+                separators++;
+            } else {
+                throw new IllegalArgumentException("Invalid time in " + name + ": " + required(column, name));
+            }
+        }
+        if (separators == 0 || digits == 0 || value > 59) {
+            throw new IllegalArgumentException("Invalid time in " + name + ": " + required(column, name));
+        }
+        time = time * 60 + value;
+        // H:MM is accepted as well, the missing seconds count as zero
+        return separators == 1 ? time * 60 : time;
+    }
+
+    // GTFS dates are always YYYYMMDD
+    LocalDate date(int column, String name) {
+        requirePresent(column, name);
+        int start = fieldStarts[column];
+        if (fieldEnds[column] - start != 8) {
+            throw new IllegalArgumentException("Invalid date in " + name + ": " + required(column, name));
+        }
+        int value = 0;
+        for (int i = start; i < start + 8; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid date in " + name + ": " + required(column, name));
+            }
+            value = value * 10 + digit;
+        }
+        return LocalDate.of(value / 10000, value / 100 % 100, value % 100);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void requirePresent(int column, String name) {
+        if (!isPresent(column)) {
+            throw new IllegalArgumentException("Required field missing: " + name);
+        }
+    }
+
+    private void readRecord(int first) throws IOException {
+        recordLength = 0;
+        fieldCount = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        int c = first;
+
+        while (true) {
+            if (c == -1) {
+                endField(fieldStart);
+                return;
+            }
+            if (inQuotes) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        position++;
+                        append('"');
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    append((char) c);
+                }
+            } else if (c == ',') {
+                endField(fieldStart);
+                fieldStart = recordLength;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    position++;
+                }
+                endField(fieldStart);
+                return;
+            } else if (c == '"' && isBlank(fieldStart, recordLength)) {
+                recordLength = fieldStart;
+                inQuotes = true;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private void endField(int fieldStart) {
+        int start = fieldStart;
+        int end = recordLength;
+        while (start < end && record[start] <= ' ') {
+            start++;
+        }
+        while (end > start && record[end - 1] <= ' ') {
+            end--;
+        }
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (record[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, recordLength * 2);
+        }
+        record[recordLength++] = c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    // Open addressing table looked up straight from the record buffer, a String is only built for a new id
+    private static final class StringPool {
+
+        private String[] table = new String[1024];
+        private int size;
+
+        String intern(char[] chars, int start, int length) {
+            int hash = 0;
+            for (int i = start; i < start + length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = table.length - 1;
+            int slot = spread(hash) & mask;
+            String candidate;
+            while ((candidate = table[slot]) != null) {
+                if (matches(candidate, chars, start, length)) {
+                    return candidate;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            String value = new String(chars, start, length);
+            table[slot] = value;
+            if (++size * 2 > table.length) {
+                grow();
+            }
+            return value;
+        }
+
+        private boolean matches(String candidate, char[] chars, int start, int length) {
+            if (candidate.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (candidate.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            String[] previous = table;
+            table = new String[previous.length * 2];
+            int mask = table.length - 1;
+            for (String value : previous) {
+                if (value != null) {
+                    int slot = spread(value.hashCode()) & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = value;
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
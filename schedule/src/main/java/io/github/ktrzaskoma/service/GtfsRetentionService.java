@@ -0,0 +1,124 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.repository.GtfsBulkLoader;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import io.github.ktrzaskoma.repository.GtfsUploadVersionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GtfsRetentionService {
+
+    private final GtfsUploadRepository uploadRepository;
+    private final GtfsUploadVersionRepository versionRepository;
+    private final GtfsBulkLoader bulkLoader;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${gtfs.retention.keep-uploads:3}")
+    private int keepUploads;
+
+    @Value("${gtfs.retention.batch-size:5000}")
+    private int batchSize;
+
+    @Scheduled(initialDelayString = "${gtfs.retention.purge-interval:PT10M}",
+            fixedDelayString = "${gtfs.retention.purge-interval:PT10M}")
+    public void purgeExpiredUploads() {
+        // Uploads marked in an earlier run that did not get to finish come first, then failed imports
+        // whose own clean-up did not go through
+        List<GtfsUpload> uploads = new ArrayList<>(
+                uploadRepository.findByStatusAndPurgedAtIsNull(GtfsUpload.UploadStatus.PURGED));
+        uploads.addAll(uploadRepository.findByStatusAndPurgedAtIsNull(GtfsUpload.UploadStatus.FAILED));
+        uploads.addAll(findExpiredUploads());
+
+        for (GtfsUpload upload : uploads) {
+            if (upload.getStatus() != GtfsUpload.UploadStatus.READY || markPurged(upload.getId())) {
+                purgeUpload(upload.getId());
+            }
+        }
+    }
+
+    private List<GtfsUpload> findExpiredUploads() {
+        List<GtfsUpload> ready = uploadRepository.findByStatusOrderByUploadDateDesc(GtfsUpload.UploadStatus.READY);
+        Set<Long> retained = new HashSet<>();
+        ready.stream().limit(keepUploads).forEach(upload -> retained.add(upload.getId()));
+        uploadRepository.findByIsActiveTrue().ifPresent(active -> retained.add(active.getId()));
+        if (retained.isEmpty()) {
+            return List.of();
+        }
+
+        // A differential upload reads the rows of every upload in its chain, those have to stay as well
+        Set<Long> referenced = new HashSet<>(versionRepository.findVersionIdsOf(retained));
+        return ready.stream()
+                .filter(upload -> !retained.contains(upload.getId()) && !referenced.contains(upload.getId()))
+                .toList();
+    }
+
+    private boolean markPurged(Long uploadId) {
+        // Re-checked under a lock, the upload may have been activated since it was picked
+        Boolean marked = transactionTemplate.execute(status -> uploadRepository.findForUpdate(uploadId)
+                .filter(upload -> upload.getStatus() == GtfsUpload.UploadStatus.READY)
+                .filter(upload -> !Boolean.TRUE.equals(upload.getIsActive()))
+                .map(upload -> {
+                    upload.setStatus(GtfsUpload.UploadStatus.PURGED);
+                    uploadRepository.saveAndFlush(upload);
+                    return true;
+                })
+                .orElse(false));
+        return Boolean.TRUE.equals(marked);
+    }
+
+    private void purgeUpload(Long uploadId) {
+        long startTime = System.nanoTime();
+        long rows = 0;
+
+        // Rows of older uploads that this one replaced become current again for their own versions
+        for (String table : GtfsBulkLoader.UPLOAD_TABLES) {
+            rows += inBatches(() -> bulkLoader.restoreRetiredRows(table, uploadId, batchSize));
+        }
+        for (String table : GtfsBulkLoader.DERIVED_TABLES) {
+            rows += inBatches(() -> bulkLoader.deleteUploadRows(table, uploadId, batchSize));
+        }
+        for (String table : GtfsBulkLoader.UPLOAD_TABLES) {
+            rows += inBatches(() -> bulkLoader.deleteUploadRows(table, uploadId, batchSize));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            versionRepository.deleteByUploadId(uploadId);
+            uploadRepository.findById(uploadId).ifPresent(upload -> {
+                upload.setPurgedAt(LocalDateTime.now());
+                uploadRepository.save(upload);
+            });
+        });
+        log.info("Purged upload {}: {} rows in {} ms", uploadId, rows, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private long inBatches(PurgeBatch batch) {
+        // Each batch commits on its own, live queries only ever wait for one batch worth of row locks
+        long total = 0;
+        int affected;
+        do {
+            Integer result = transactionTemplate.execute(status -> batch.run());
+            affected = result != null ? result : 0;
+            total += affected;
+        } while (affected >= batchSize);
+        return total;
+    }
+
+    @FunctionalInterface
+    private interface PurgeBatch {
+        int run();
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.dto.GtfsUploadDto;
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.github.ktrzaskoma.exception.UploadNotFoundException;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GtfsUploadService {
+
+    private final GtfsUploadRepository uploadRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public List<GtfsUploadDto> getUploads() {
+        return uploadRepository.findAllByOrderByUploadDateDesc().stream()
+                .map(this::mapToDto)
+                .collect(Collectors.toList());
+    }
+
+    // Only flips flags, so the switch is a short transaction no matter how large the timetable is. Concurrent
+    // activations, e.g. a rollback and an import that finishes, queue up on the locks of the READY uploads. The active
+    // upload is one of them, so it is read only once the activation before has committed.
+    @Transactional
+    public GtfsUploadDto activateUpload(Long uploadId) {
+        List<GtfsUpload> readyUploads = uploadRepository.findReadyForUpdate();
+        GtfsUpload upload = readyUploads.stream()
+                .filter(ready -> ready.getId().equals(uploadId))
+                .findFirst()
+                .or(() -> uploadRepository.findById(uploadId))
+                .orElseThrow(() -> new UploadNotFoundException("Upload not found: " + uploadId));
+
+        if (upload.getStatus() != GtfsUpload.UploadStatus.READY) {
+            throw new IllegalArgumentException("Upload " + uploadId + " cannot be activated, status: " + upload.getStatus());
+        }
+        if (Boolean.TRUE.equals(upload.getIsActive())) {
+            return mapToDto(upload);
+        }
+
+        for (GtfsUpload previous : readyUploads) {
+            if (Boolean.TRUE.equals(previous.getIsActive())) {
+                previous.setIsActive(false);
+                uploadRepository.save(previous);
+                log.info("Deactivated previous upload: {}", previous.getId());
+            }
+        }
+
+        upload.setIsActive(true);
+        upload.setActivatedAt(LocalDateTime.now());
+        upload = uploadRepository.save(upload);
+        eventPublisher.publishEvent(new UploadActivatedEvent(upload.getId()));
+        log.info("Activated upload: {}", upload.getId());
+        return mapToDto(upload);
+    }
+
+    private GtfsUploadDto mapToDto(GtfsUpload upload) {
+        return GtfsUploadDto.builder()
+                .id(upload.getId())
+                .filename(upload.getFilename())
+                .uploadedBy(upload.getUploadedBy())
+                .uploadDate(upload.getUploadDate())
+                .activatedAt(upload.getActivatedAt())
+                .status(upload.getStatus().name())
+                .isActive(upload.getIsActive())
+                .archiveSha256(upload.getArchiveSha256())
+                .build();
+    }
+}
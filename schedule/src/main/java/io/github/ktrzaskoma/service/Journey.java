@@ -0,0 +1,17 @@
+package io.github.ktrzaskoma.service;
+
+import java.util.List;
+
+// A trip plan found in a timetable, times count from midnight of the requested date
+record Journey(int departure, int arrival, int transfers, List<Leg> legs) {
+
+    static final int WALK = -1;
+
+    // Trip is WALK for a footpath between two stops
+    record Leg(int trip, int fromStop, int toStop, int departure, int arrival) {
+
+        boolean isWalk() {
+            return trip == WALK;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package io.github.ktrzaskoma.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+// Round based public transit routing (RAPTOR) over the route patterns of a timetable. Round k finds the earliest
+// arrival at every stop with at most k trips, so the journeys it returns are Pareto optimal in arrival time and
+// number of transfers. Trips of the previous service day that run past midnight are boarded with their times
+// shifted back by one day.
+//
+// Range queries run the rounds once per departure from the origin, latest first, and keep the labels between
+// runs (rRAPTOR): an arrival reachable from a later departure is reachable from an earlier one as well, so each
+// run only explores what the earlier departure improves.
+final class RaptorPlanner {
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final int ORIGIN = 0;
+    private static final int TRANSIT = 1;
+    private static final int WALKED = 2;
+
+    private final Timetable timetable;
+    private final int toStop;
+    private final int serviceDay;
+    private final int previousServiceDay;
+    private final int rounds;
+
+    // Per round: earliest arrival at every stop and how it was reached. Labels are carried over to later rounds,
+    // labelRound tells in which round a label was set.
+    private final int[][] arrivals;
+    private final int[][] labelKinds;
+    private final int[][] labelTrips;
+    private final int[][] labelFromStops;
+    private final int[][] labelDepartures;
+    private final int[][] labelRounds;
+    private final int[] patternFrom;
+
+    private RaptorPlanner(Timetable timetable, int toStop, LocalDate date, int rounds) {
+        this.timetable = timetable;
+        this.toStop = toStop;
+        this.serviceDay = timetable.serviceDay(date);
+        this.previousServiceDay = timetable.serviceDay(date.minusDays(1));
+        this.rounds = rounds;
+        int stopCount = timetable.stopCount();
+        this.arrivals = new int[rounds + 1][stopCount];
+        this.labelKinds = new int[rounds + 1][stopCount];
+        this.labelTrips = new int[rounds + 1][stopCount];
+        this.labelFromStops = new int[rounds + 1][stopCount];
+        this.labelDepartures = new int[rounds + 1][stopCount];
+        this.labelRounds = new int[rounds + 1][stopCount];
+        for (int[] roundArrivals : arrivals) {
+            Arrays.fill(roundArrivals, UNREACHED);
+        }
+        this.patternFrom = new int[timetable.patternCount()];
+        Arrays.fill(patternFrom, -1);
+    }
+
+    // Journeys leaving at or after the given time with at most maxTransfers changes of trip, the fastest first
+    // followed by those with fewer transfers that arrive later
+    static List<Journey> plan(Timetable timetable, int fromStop, int toStop, LocalDate date, int time,
+                              int maxTransfers) {
+        if (fromStop == toStop) {
+            return List.of();
+        }
+        RaptorPlanner planner = new RaptorPlanner(timetable, toStop, date, maxTransfers + 1);
+        if (planner.serviceDay < 0 && planner.previousServiceDay < 0) {
+            return List.of();
+        }
+        List<Journey> journeys = planner.search(fromStop, time);
+        journeys.sort(Comparator.comparingInt(Journey::arrival));
+        return journeys;
+    }
+
+    // Every journey departing between startTime and endTime that no other journey beats on departure, arrival
+    // and number of transfers, in order of departure
+    static List<Journey> profile(Timetable timetable, int fromStop, int toStop, LocalDate date, int startTime,
+                                 int endTime, int maxTransfers) {
+        if (fromStop == toStop) {
+            return List.of();
+        }
+        RaptorPlanner planner = new RaptorPlanner(timetable, toStop, date, maxTransfers + 1);
+        if (planner.serviceDay < 0 && planner.previousServiceDay < 0) {
+            return List.of();
+        }
+        List<Journey> journeys = new ArrayList<>();
+        for (int time : planner.departuresFrom(fromStop, startTime, endTime).descendingSet()) {
+            journeys.addAll(planner.search(fromStop, time));
+        }
+        return journeys.stream()
+                .filter(journey -> journeys.stream().noneMatch(other -> dominates(other, journey)))
+                .filter(journey -> journey.departure() <= endTime)
+                .sorted(Comparator.comparingInt(Journey::departure).thenComparingInt(Journey::arrival))
+                .toList();
+    }
+
+    private static boolean dominates(Journey first, Journey second) {
+        return first != second
+                && first.departure() >= second.departure()
+                && first.arrival() <= second.arrival()
+                && first.transfers() <= second.transfers()
+                && (first.departure() > second.departure() || first.arrival() < second.arrival()
+                || first.transfers() < second.transfers());
+    }
+
+    // Times in the window at which a trip leaves the origin, or leaves a stop within walking distance of it less
+    // the walk
+    private TreeSet<Integer> departuresFrom(int fromStop, int startTime, int endTime) {
+        TreeSet<Integer> departures = new TreeSet<>();
+        addDepartures(departures, fromStop, 0, startTime, endTime);
+        for (int i = timetable.footpathStart[fromStop]; i < timetable.footpathStart[fromStop + 1]; i++) {
+            addDepartures(departures, timetable.footpathTargets[i], timetable.footpathTimes[i], startTime, endTime);
+        }
+        return departures;
+    }
+
+    private void addDepartures(TreeSet<Integer> departures, int stop, int walk, int startTime, int endTime) {
+        for (int i = timetable.stopPatternStart[stop]; i < timetable.stopPatternStart[stop + 1]; i++) {
+            int pattern = timetable.stopPatterns[i];
+            int position = timetable.stopPatternPositions[i];
+            addDepartures(departures, pattern, position, walk, startTime, endTime, serviceDay, 0);
+            addDepartures(departures, pattern, position, walk, startTime, endTime, previousServiceDay,
+                    Timetable.SECONDS_PER_DAY);
+        }
+    }
+
+    private void addDepartures(TreeSet<Integer> departures, int pattern, int position, int walk, int startTime,
+                               int endTime, int day, int shift) {
+        if (day < 0) {
+            return;
+        }
+        int tripStart = timetable.patternTripStart[pattern];
+        int tripCount = timetable.patternTripCount(pattern);
+        for (int trip = timetable.firstPatternTripFrom(pattern, position, startTime + walk + shift); trip < tripCount;
+             trip++) {
+            int departure = timetable.patternDepartures[timetable.patternTime(pattern, trip, position)] - shift;
+            if (departure - walk > endTime) {
+                break;
+            }
+            if (timetable.runsOn(timetable.patternTrips[tripStart + trip], day)) {
+                departures.add(departure - walk);
+            }
+        }
+    }
+
+    // One run of the rounds for a departure from the origin. Returns the journeys that improve on what earlier
+    // runs found, one per number of trips that gets to the target sooner than one trip less.
+    private List<Journey> search(int fromStop, int time) {
+        int[] targetArrivals = new int[rounds + 1];
+        for (int round = 0; round <= rounds; round++) {
+            targetArrivals[round] = arrivals[round][toStop];
+        }
+
+        arrivals[0][fromStop] = time;
+        labelKinds[0][fromStop] = ORIGIN;
+        BitSet marked = new BitSet(timetable.stopCount());
+        marked.set(fromStop);
+        relaxFootpaths(0, marked);
+
+        List<Journey> journeys = new ArrayList<>();
+        for (int round = 1; round <= rounds && !marked.isEmpty(); round++) {
+            startRound(round);
+            List<Integer> patterns = collectPatterns(marked);
+            marked.clear();
+            for (int pattern : patterns) {
+                scanPattern(round, pattern, patternFrom[pattern], marked);
+                patternFrom[pattern] = -1;
+            }
+            relaxFootpaths(round, marked);
+
+            // Only a faster arrival at the target is worth the extra transfer
+            int arrival = arrivals[round][toStop];
+            if (arrival < targetArrivals[round] && arrival < arrivals[round - 1][toStop]) {
+                journeys.add(reconstruct(round));
+            }
+        }
+        return journeys;
+    }
+
+    // A stop reached with fewer trips is also reached with at most this many
+    private void startRound(int round) {
+        int[] previous = arrivals[round - 1];
+        for (int stop = 0; stop < previous.length; stop++) {
+            if (previous[stop] < arrivals[round][stop]) {
+                arrivals[round][stop] = previous[stop];
+                labelKinds[round][stop] = labelKinds[round - 1][stop];
+                labelTrips[round][stop] = labelTrips[round - 1][stop];
+                labelFromStops[round][stop] = labelFromStops[round - 1][stop];
+                labelDepartures[round][stop] = labelDepartures[round - 1][stop];
+                labelRounds[round][stop] = labelRounds[round - 1][stop];
+            }
+        }
+    }
+
+    // Every pattern calling at a marked stop, with the earliest position of such a stop in the pattern
+    private List<Integer> collectPatterns(BitSet marked) {
+        List<Integer> patterns = new ArrayList<>();
+        for (int stop = marked.nextSetBit(0); stop >= 0; stop = marked.nextSetBit(stop + 1)) {
+            for (int i = timetable.stopPatternStart[stop]; i < timetable.stopPatternStart[stop + 1]; i++) {
+                int pattern = timetable.stopPatterns[i];
+                int position = timetable.stopPatternPositions[i];
+                if (patternFrom[pattern] < 0) {
+                    patterns.add(pattern);
+                    patternFrom[pattern] = position;
+                } else if (position < patternFrom[pattern]) {
+                    patternFrom[pattern] = position;
+                }
+            }
+        }
+        return patterns;
+    }
+
+    private void scanPattern(int round, int pattern, int fromPosition, BitSet marked) {
+        int stopStart = timetable.patternStopStart[pattern];
+        int stopCount = timetable.patternStopCount(pattern);
+        int[] previous = arrivals[round - 1];
+
+        // The trip run currently ridden along the pattern, its position in the pattern and time shift
+        int tripPosition = -1;
+        int shift = 0;
+        int boardedStop = -1;
+        int boardedDeparture = 0;
+        for (int position = fromPosition; position < stopCount; position++) {
+            int stop = timetable.patternStops[stopStart + position];
+            if (tripPosition >= 0) {
+                int arrival = timetable.patternArrivals[timetable.patternTime(pattern, tripPosition, position)] - shift;
+                if (arrival < Math.min(arrivals[round][stop], arrivals[round][toStop])) {
+                    arrivals[round][stop] = arrival;
+                    setLabel(round, stop, TRANSIT, tripAt(pattern, tripPosition), boardedStop, boardedDeparture);
+                    marked.set(stop);
+                }
+            }
+
+            if (previous[stop] == UNREACHED) {
+                continue;
+            }
+            int ready = previous[stop] + transferTime(round - 1, stop);
+            int currentDeparture = tripPosition < 0 ? UNREACHED
+                    : timetable.patternDepartures[timetable.patternTime(pattern, tripPosition, position)] - shift;
+            if (ready > currentDeparture) {
+                continue;
+            }
+            long run = earliestRun(pattern, position, ready);
+            if (run >= 0 && departureOf(pattern, run, position) < currentDeparture) {
+                tripPosition = (int) (run >>> 1);
+                shift = (run & 1) == 1 ? Timetable.SECONDS_PER_DAY : 0;
+                boardedStop = stop;
+                boardedDeparture = departureOf(pattern, run, position);
+            }
+        }
+    }
+
+    // Changing trips takes the stop's transfer time, walking there already includes it
+    private int transferTime(int round, int stop) {
+        return labelKinds[round][stop] == TRANSIT ? timetable.stopTransferTimes[stop] : 0;
+    }
+
+    // Earliest trip run of the pattern that departs from the position at or after the time, encoded as the trip
+    // position shifted left with the low bit set for a run of the previous day. -1 when there is none.
+    private long earliestRun(int pattern, int position, int time) {
+        int today = firstRunningTrip(pattern, position, time, serviceDay);
+        int yesterday = firstRunningTrip(pattern, position, time + Timetable.SECONDS_PER_DAY, previousServiceDay);
+        if (today < 0 && yesterday < 0) {
+            return -1;
+        }
+        long todayRun = (long) today << 1;
+        long yesterdayRun = (long) yesterday << 1 | 1;
+        if (today < 0) {
+            return yesterdayRun;
+        }
+        if (yesterday < 0) {
+            return todayRun;
+        }
+        return departureOf(pattern, yesterdayRun, position) < departureOf(pattern, todayRun, position)
+                ? yesterdayRun : todayRun;
+    }
+
+    private int firstRunningTrip(int pattern, int position, int time, int day) {
+        if (day < 0) {
+            return -1;
+        }
+        int tripStart = timetable.patternTripStart[pattern];
+        int tripCount = timetable.patternTripCount(pattern);
+        for (int trip = timetable.firstPatternTripFrom(pattern, position, time); trip < tripCount; trip++) {
+            if (timetable.runsOn(timetable.patternTrips[tripStart + trip], day)) {
+                return trip;
+            }
+        }
+        return -1;
+    }
+
+    private int departureOf(int pattern, long run, int position) {
+        int departure = timetable.patternDepartures[timetable.patternTime(pattern, (int) (run >>> 1), position)];
+        return (run & 1) == 1 ? departure - Timetable.SECONDS_PER_DAY : departure;
+    }
+
+    private int tripAt(int pattern, int tripPosition) {
+        return timetable.patternTrips[timetable.patternTripStart[pattern] + tripPosition];
+    }
+
+    // Footpaths are only followed from stops reached by a trip in this round and never lead to one of them, so
+    // walks are not chained and the stop a walk starts from keeps its label
+    private void relaxFootpaths(int round, BitSet marked) {
+        BitSet walked = new BitSet();
+        for (int stop = marked.nextSetBit(0); stop >= 0; stop = marked.nextSetBit(stop + 1)) {
+            for (int i = timetable.footpathStart[stop]; i < timetable.footpathStart[stop + 1]; i++) {
+                int target = timetable.footpathTargets[i];
+                if (marked.get(target)) {
+                    continue;
+                }
+                int arrival = arrivals[round][stop] + timetable.footpathTimes[i];
+                if (arrival < Math.min(arrivals[round][target], arrivals[round][toStop])) {
+                    arrivals[round][target] = arrival;
+                    setLabel(round, target, WALKED, Journey.WALK, stop, arrivals[round][stop]);
+                    walked.set(target);
+                }
+            }
+        }
+        marked.or(walked);
+    }
+
+    private void setLabel(int round, int stop, int kind, int trip, int fromStop, int departure) {
+        labelKinds[round][stop] = kind;
+        labelTrips[round][stop] = trip;
+        labelFromStops[round][stop] = fromStop;
+        labelDepartures[round][stop] = departure;
+        labelRounds[round][stop] = round;
+    }
+
+    private Journey reconstruct(int round) {
+        List<Journey.Leg> legs = new ArrayList<>();
+        int stop = toStop;
+        int labelRound = round;
+        while (labelKinds[labelRound][stop] != ORIGIN) {
+            int setIn = labelRounds[labelRound][stop];
+            int fromStop = labelFromStops[setIn][stop];
+            legs.add(0, new Journey.Leg(labelTrips[setIn][stop], fromStop, stop, labelDepartures[setIn][stop],
+                    arrivals[setIn][stop]));
+            // A trip used up a round, a walk continues from the trip that reached its first stop
+            labelRound = labelKinds[setIn][stop] == TRANSIT ? setIn - 1 : setIn;
+            stop = fromStop;
+        }
+
+        // A walk from the origin starts just in time for the first trip instead of at the requested time
+        if (legs.size() > 1 && legs.get(0).isWalk()) {
+            Journey.Leg walk = legs.get(0);
+            int duration = walk.arrival() - walk.departure();
+            int boarding = legs.get(1).departure();
+            legs.set(0, new Journey.Leg(Journey.WALK, walk.fromStop(), walk.toStop(), boarding - duration, boarding));
+        }
+        int trips = (int) legs.stream().filter(leg -> !leg.isWalk()).count();
+        return new Journey(legs.get(0).departure(), legs.get(legs.size() - 1).arrival(), Math.max(trips - 1, 0),
+                legs);
+    }
+}
@@ -2,72 +2,335 @@ package io.github.ktrzaskoma.service;
 
 
 import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.dto.DepartureDto;
+import io.github.ktrzaskoma.dto.JourneyDto;
+import io.github.ktrzaskoma.dto.JourneyLegDto;
+import io.github.ktrzaskoma.dto.NearbyStopDto;
 import io.github.ktrzaskoma.dto.StopDto;
-import io.github.ktrzaskoma.repository.StopRepository;
-import io.github.ktrzaskoma.model.StopTime;
+import io.github.ktrzaskoma.dto.TripDto;
+import io.github.ktrzaskoma.dto.TripStopDto;
+import io.github.ktrzaskoma.exception.StopNotFoundException;
+import io.github.ktrzaskoma.exception.TimetableUnavailableException;
+import io.github.ktrzaskoma.exception.TripNotFoundException;
 import io.github.ktrzaskoma.repository.StopTimeRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ScheduleService {
 
-    private final StopRepository stopRepository;
     private final StopTimeRepository stopTimeRepository;
+    private final TimetableService timetableService;
+    private final ConnectionCache connectionCache;
+    private final ServiceCalendarService serviceCalendarService;
 
-    public List<StopDto> getAllActiveStops() {
-        return stopRepository.findByUploadIsActiveTrue().stream()
-                .map(stop -> StopDto.builder()
-                        .stopId(stop.getStopId())
-                        .stopName(stop.getStopName())
-                        .stopLat(stop.getStopLat())
-                        .stopLon(stop.getStopLon())
-                        .wheelchairBoarding(stop.getWheelchairBoarding())
-                        .build())
+    private static final int MAX_CONNECTIONS = 5;
+    // Cached per time bucket, enough to still answer with MAX_CONNECTIONS from late in the bucket
+    private static final int CACHED_CONNECTIONS = 4 * MAX_CONNECTIONS;
+    private static final int MAX_TRANSFERS = 5;
+    private static final int MAX_DEPARTURES = 50;
+    private static final int MAX_NEARBY_STOPS = 100;
+    private static final double MAX_NEARBY_RADIUS_METERS = 50_000;
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    public List<ConnectionDto> findConnections(String fromStopId, String toStopId, LocalDate date, LocalTime time) {
+        Optional<Timetable> timetable = timetableService.current();
+        // Entries are keyed by the upload that answers them. The activation listeners of the cache, the calendars
+        // and the timetable run in no fixed order, so an answer read from the previous upload must not end up under
+        // the key of the next one.
+        ServiceCalendars calendars = timetable.isPresent() ? null : serviceCalendarService.current();
+        long uploadId = timetable.isPresent() ? timetable.get().getUploadId() : calendars.getUploadId();
+        LocalTime bucketStart = connectionCache.bucketStart(time);
+        ConnectionCache.Key key = new ConnectionCache.Key(uploadId, fromStopId, toStopId, date, bucketStart);
+        List<ConnectionDto> cached = connectionCache.get(key, () -> findConnections(timetable, calendars, fromStopId,
+                toStopId, date, bucketStart, CACHED_CONNECTIONS));
+
+        // Leaves out what departs between the start of the bucket and the requested time
+        List<ConnectionDto> connections = cached.stream()
+                .filter(connection -> connection.getDepartureTime().isBefore(bucketStart)
+                        || !connection.getDepartureTime().isBefore(time))
+                .limit(MAX_CONNECTIONS)
                 .collect(Collectors.toList());
+        if (connections.size() < MAX_CONNECTIONS && cached.size() == CACHED_CONNECTIONS) {
+            return findConnections(timetable, calendars, fromStopId, toStopId, date, time, MAX_CONNECTIONS);
+        }
+        return connections;
     }
 
+    private List<ConnectionDto> findConnections(Optional<Timetable> timetable, ServiceCalendars calendars,
+                                                String fromStopId, String toStopId, LocalDate date, LocalTime time,
+                                                int limit) {
+        if (timetable.isPresent()) {
+            return findConnections(timetable.get(), fromStopId, toStopId, date, time, limit);
+        }
 
-    public List<ConnectionDto> findConnections(String fromStopId, String toStopId, LocalDate date, LocalTime time) {
-        List<StopTime> departureStopTimes = stopTimeRepository.findConnections(fromStopId, toStopId, time, date);
-
-        List<ConnectionDto> connections = new ArrayList<>();
-
-        for (StopTime departure : departureStopTimes) {
-            // Find arrival stop time for the same trip
-            StopTime arrival = stopTimeRepository.findAll().stream()
-                    .filter(st -> st.getTrip().getTripId().equals(departure.getTrip().getTripId())
-                            && st.getStop().getStopId().equals(toStopId)
-                            && st.getStopSequence() > departure.getStopSequence())
-                    .findFirst()
-                    .orElse(null);
-
-            if (arrival != null) {
-                connections.add(ConnectionDto.builder()
-                        .tripId(departure.getTrip().getTripId())
-                        .routeShortName(departure.getTrip().getRoute().getRouteShortName())
-                        .routeLongName(departure.getTrip().getRoute().getRouteLongName())
-                        .fromStopName(departure.getStop().getStopName())
-                        .toStopName(arrival.getStop().getStopName())
-                        .departureTime(departure.getDepartureTime())
-                        .arrivalTime(arrival.getArrivalTime())
-                        .wheelchairAccessible(departure.getTrip().getWheelchairAccessible())
-                        .bikesAllowed(departure.getTrip().getBikesAllowed())
-                        .build());
+        // Only used until the timetable of the active upload has been built. Like the timetable it merges in the
+        // trips of the previous service day that leave after midnight.
+        List<String> serviceIds = calendars.servicesOn(date);
+        List<String> previousServiceIds = calendars.servicesOn(date.minusDays(1));
+        if (serviceIds.isEmpty() && previousServiceIds.isEmpty()) {
+            return List.of();
+        }
+        return stopTimeRepository.findConnections(fromStopId, toStopId, time.toSecondOfDay(), serviceIds,
+                previousServiceIds, calendars.getVersionIds(), Limit.of(limit));
+    }
+
+    private List<ConnectionDto> findConnections(Timetable timetable, String fromStopId, String toStopId,
+                                                LocalDate date, LocalTime time, int limit) {
+        int fromStop = timetable.stop(fromStopId);
+        int toStop = timetable.stop(toStopId);
+        if (fromStop < 0 || toStop < 0) {
+            return List.of();
+        }
+
+        return ConnectionScanner.directTrips(timetable, fromStop, toStop, date, time.toSecondOfDay(), limit)
+                .stream()
+                .map(leg -> {
+                    int trip = leg.trip();
+                    int route = timetable.tripRoutes[trip];
+                    return ConnectionDto.builder()
+                            .tripId(timetable.tripIds[trip])
+                            .routeShortName(timetable.routeShortNames[route])
+                            .routeLongName(timetable.routeLongNames[route])
+                            .fromStopName(timetable.stopNames[leg.fromStop()])
+                            .toStopName(timetable.stopNames[leg.toStop()])
+                            .departureTime(toLocalTime(leg.departure()))
+                            .arrivalTime(toLocalTime(leg.arrival()))
+                            .wheelchairAccessible(timetable.tripWheelchairAccessible[trip])
+                            .bikesAllowed(timetable.tripBikesAllowed[trip])
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Journeys need the in-memory timetable, there is no database fallback for them
+    public List<JourneyDto> findJourneys(String fromStopId, String toStopId, LocalDate date, LocalTime time,
+                                         int maxTransfers) {
+        checkMaxTransfers(maxTransfers);
+        Timetable timetable = requireTimetable();
+        int fromStop = timetable.stop(fromStopId);
+        int toStop = timetable.stop(toStopId);
+        if (fromStop < 0 || toStop < 0) {
+            return List.of();
+        }
+
+        return RaptorPlanner.plan(timetable, fromStop, toStop, date, time.toSecondOfDay(), maxTransfers).stream()
+                .map(journey -> toJourneyDto(timetable, journey))
+                .collect(Collectors.toList());
+    }
+
+    // All journeys worth taking that depart within the window, found in one pass instead of one query per departure
+    public List<JourneyDto> findJourneysInRange(String fromStopId, String toStopId, LocalDate date,
+                                                LocalTime startTime, LocalTime endTime, int maxTransfers) {
+        checkMaxTransfers(maxTransfers);
+        if (endTime.isBefore(startTime)) {
+            throw new IllegalArgumentException("endTime must not be before startTime");
+        }
+        Timetable timetable = requireTimetable();
+        int fromStop = timetable.stop(fromStopId);
+        int toStop = timetable.stop(toStopId);
+        if (fromStop < 0 || toStop < 0) {
+            return List.of();
+        }
+
+        return RaptorPlanner.profile(timetable, fromStop, toStop, date, startTime.toSecondOfDay(),
+                        endTime.toSecondOfDay(), maxTransfers).stream()
+                .map(journey -> toJourneyDto(timetable, journey))
+                .collect(Collectors.toList());
+    }
+
+    public List<NearbyStopDto> findNearbyStops(double lat, double lon, double radiusMeters, int limit) {
+        checkCoordinates(lat, lon);
+        if (radiusMeters <= 0 || radiusMeters > MAX_NEARBY_RADIUS_METERS) {
+            throw new IllegalArgumentException("radius must be positive and at most " + MAX_NEARBY_RADIUS_METERS);
+        }
+        if (limit < 1 || limit > MAX_NEARBY_STOPS) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_NEARBY_STOPS);
+        }
+        Timetable timetable = requireTimetable();
+
+        return timetable.stopSpatialIndex.nearest(lat, lon, radiusMeters, limit).stream()
+                .map(nearby -> {
+                    int stop = nearby.stop();
+                    return NearbyStopDto.builder()
+                            .stopId(timetable.stopIds[stop])
+                            .stopName(timetable.stopNames[stop])
+                            .stopLat(BigDecimal.valueOf(timetable.stopLats[stop]))
+                            .stopLon(BigDecimal.valueOf(timetable.stopLons[stop]))
+                            .wheelchairBoarding(timetable.stopWheelchairBoarding[stop])
+                            .distanceMeters((int) Math.round(nearby.distance()))
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Answered per keystroke from the name index of the timetable
+    public List<StopDto> searchStops(String query, int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+        Timetable timetable = requireTimetable();
+
+        return timetable.stopNameIndex.search(query, limit).stream()
+                .map(stop -> toStopDto(timetable, stop))
+                .collect(Collectors.toList());
+    }
+
+    public List<StopDto> findStopsInBox(double minLat, double minLon, double maxLat, double maxLon) {
+        checkCoordinates(minLat, minLon);
+        checkCoordinates(maxLat, maxLon);
+        if (minLat > maxLat || minLon > maxLon) {
+            throw new IllegalArgumentException("minLat and minLon must not exceed maxLat and maxLon");
+        }
+        Timetable timetable = requireTimetable();
+
+        return timetable.stopSpatialIndex.within(minLat, minLon, maxLat, maxLon).stream()
+                .sorted(Comparator.comparing(stop -> timetable.stopIds[stop]))
+                .map(stop -> toStopDto(timetable, stop))
+                .collect(Collectors.toList());
+    }
+
+    private StopDto toStopDto(Timetable timetable, int stop) {
+        return StopDto.builder()
+                .stopId(timetable.stopIds[stop])
+                .stopName(timetable.stopNames[stop])
+                .stopLat(BigDecimal.valueOf(timetable.stopLats[stop]))
+                .stopLon(BigDecimal.valueOf(timetable.stopLons[stop]))
+                .wheelchairBoarding(timetable.stopWheelchairBoarding[stop])
+                .build();
+    }
+
+    private void checkCoordinates(double lat, double lon) {
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new IllegalArgumentException("coordinates out of range: " + lat + ", " + lon);
+        }
+    }
+
+    // Served from the in-memory timetable only, station screens poll it every few seconds
+    public List<DepartureDto> getDepartures(String stopId, LocalDate date, LocalTime time, int limit) {
+        if (limit < 1 || limit > MAX_DEPARTURES) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_DEPARTURES);
+        }
+        Timetable timetable = requireTimetable();
+        int stop = timetable.stop(stopId);
+        if (stop < 0) {
+            throw new StopNotFoundException("Stop not found: " + stopId);
+        }
+
+        return DepartureBoard.next(timetable, stop, date, time.toSecondOfDay(), limit).stream()
+                .map(departure -> {
+                    int trip = departure.trip();
+                    int route = timetable.tripRoutes[trip];
+                    return DepartureDto.builder()
+                            .tripId(timetable.tripIds[trip])
+                            .routeShortName(timetable.routeShortNames[route])
+                            .routeLongName(timetable.routeLongNames[route])
+                            .headsign(headsign(timetable, trip))
+                            .departureTime(toLocalTime(departure.time()))
+                            .wheelchairAccessible(timetable.tripWheelchairAccessible[trip])
+                            .bikesAllowed(timetable.tripBikesAllowed[trip])
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    // The stop sequence is shared by all trips of the pattern, only the times are the trip's own
+    public TripDto getTrip(String tripId) {
+        Timetable timetable = requireTimetable();
+        int trip = timetable.trip(tripId);
+        if (trip < 0) {
+            throw new TripNotFoundException("Trip not found: " + tripId);
+        }
 
-                if (connections.size() >= 5) {
-                    break;
-                }
+        List<TripStopDto> stops = new ArrayList<>();
+        int pattern = timetable.tripPatterns[trip];
+        if (pattern >= 0) {
+            int stopStart = timetable.patternStopStart[pattern];
+            for (int position = 0; position < timetable.patternStopCount(pattern); position++) {
+                int stop = timetable.patternStops[stopStart + position];
+                int time = timetable.patternTime(pattern, timetable.tripPatternPositions[trip], position);
+                stops.add(TripStopDto.builder()
+                        .stopId(timetable.stopIds[stop])
+                        .stopName(timetable.stopNames[stop])
+                        .arrivalTime(toLocalTime(timetable.patternArrivals[time]))
+                        .departureTime(toLocalTime(timetable.patternDepartures[time]))
+                        .build());
             }
         }
 
-        return connections;
+        int route = timetable.tripRoutes[trip];
+        return TripDto.builder()
+                .tripId(timetable.tripIds[trip])
+                .routeShortName(timetable.routeShortNames[route])
+                .routeLongName(timetable.routeLongNames[route])
+                .headsign(headsign(timetable, trip))
+                .wheelchairAccessible(timetable.tripWheelchairAccessible[trip])
+                .bikesAllowed(timetable.tripBikesAllowed[trip])
+                .stops(stops)
+                .build();
+    }
+
+    // Feeds often leave trip_headsign empty, the name of the last stop is what a screen would show instead
+    private String headsign(Timetable timetable, int trip) {
+        String headsign = timetable.tripHeadsigns[trip];
+        if (headsign != null && !headsign.isBlank()) {
+            return headsign;
+        }
+        int lastStop = timetable.lastStop(trip);
+        return lastStop < 0 ? null : timetable.stopNames[lastStop];
+    }
+
+    private void checkMaxTransfers(int maxTransfers) {
+        if (maxTransfers < 0 || maxTransfers > MAX_TRANSFERS) {
+            throw new IllegalArgumentException("maxTransfers must be between 0 and " + MAX_TRANSFERS);
+        }
+    }
+
+    private Timetable requireTimetable() {
+        return timetableService.current()
+                .orElseThrow(() -> new TimetableUnavailableException("Timetable is not loaded yet, try again later"));
+    }
+
+    private JourneyDto toJourneyDto(Timetable timetable, Journey journey) {
+        return JourneyDto.builder()
+                .departureTime(toLocalTime(journey.departure()))
+                .arrivalTime(toLocalTime(journey.arrival()))
+                .transfers(journey.transfers())
+                .legs(journey.legs().stream().map(leg -> toLegDto(timetable, leg)).collect(Collectors.toList()))
+                .build();
+    }
+
+    private JourneyLegDto toLegDto(Timetable timetable, Journey.Leg leg) {
+        JourneyLegDto.JourneyLegDtoBuilder builder = JourneyLegDto.builder()
+                .mode(leg.isWalk() ? JourneyLegDto.LegMode.WALK : JourneyLegDto.LegMode.TRANSIT)
+                .fromStopId(timetable.stopIds[leg.fromStop()])
+                .fromStopName(timetable.stopNames[leg.fromStop()])
+                .toStopId(timetable.stopIds[leg.toStop()])
+                .toStopName(timetable.stopNames[leg.toStop()])
+                .departureTime(toLocalTime(leg.departure()))
+                .arrivalTime(toLocalTime(leg.arrival()));
+        if (!leg.isWalk()) {
+            int route = timetable.tripRoutes[leg.trip()];
+            builder.tripId(timetable.tripIds[leg.trip()])
+                    .routeShortName(timetable.routeShortNames[route])
+                    .routeLongName(timetable.routeLongNames[route])
+                    .tripHeadsign(timetable.tripHeadsigns[leg.trip()]);
+        }
+        return builder.build();
+    }
+
+    private LocalTime toLocalTime(int seconds) {
+        return LocalTime.ofSecondOfDay(seconds % Timetable.SECONDS_PER_DAY);
     }
 }
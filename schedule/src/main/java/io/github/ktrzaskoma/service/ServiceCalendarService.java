@@ -0,0 +1,104 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.model.ServiceCalendar;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import io.github.ktrzaskoma.repository.GtfsUploadVersionRepository;
+import io.github.ktrzaskoma.repository.ServiceCalendarRepository;
+import io.github.ktrzaskoma.repository.TimetableLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Compiles the service calendars of an upload before it is activated and keeps those of the active upload in
+// memory, for the database queries that run until the timetable is built.
+@Service
+@Slf4j
+class ServiceCalendarService {
+
+    private final GtfsUploadRepository uploadRepository;
+    private final GtfsUploadVersionRepository versionRepository;
+    private final ServiceCalendarRepository serviceCalendarRepository;
+    private final TimetableLoader timetableLoader;
+    private final TransactionTemplate readTransaction;
+
+    private volatile ServiceCalendars calendars;
+    // The last compiled calendars, the activation that usually follows takes them over without reading them back
+    private volatile ServiceCalendars compiled;
+
+    ServiceCalendarService(GtfsUploadRepository uploadRepository, GtfsUploadVersionRepository versionRepository,
+                           ServiceCalendarRepository serviceCalendarRepository, TimetableLoader timetableLoader,
+                           PlatformTransactionManager transactionManager) {
+        this.uploadRepository = uploadRepository;
+        this.versionRepository = versionRepository;
+        this.serviceCalendarRepository = serviceCalendarRepository;
+        this.timetableLoader = timetableLoader;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    // Runs in the transaction of the caller, which has to see the imported rows
+    int compile(GtfsUpload upload) {
+        long startTime = System.nanoTime();
+        List<Long> versionIds = versionRepository.findVersionIds(upload.getId());
+        ServiceCalendars.Compiler compiler = new ServiceCalendars.Compiler();
+        timetableLoader.readWeeklyCalendars(versionIds, compiler::addWeeklyCalendar);
+        timetableLoader.readCalendarDates(versionIds, compiler::addCalendarDate);
+        ServiceCalendars result = compiler.compile(upload.getId(), List.copyOf(versionIds));
+
+        serviceCalendarRepository.saveAll(result.services().entrySet().stream()
+                .map(service -> ServiceCalendar.builder()
+                        .upload(upload)
+                        .serviceId(service.getKey())
+                        .firstDate(service.getValue().firstDate())
+                        .days(service.getValue().days().toByteArray())
+                        .build())
+                .toList());
+        compiled = result;
+        log.info("Compiled {} service calendars of upload {} in {} ms", result.services().size(), upload.getId(),
+                (System.nanoTime() - startTime) / 1_000_000);
+        return result.services().size();
+    }
+
+    // Read on first use, after startup or after an upload other than the last compiled one was activated
+    ServiceCalendars current() {
+        ServiceCalendars current = calendars;
+        return current != null ? current : reload();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadActivated(UploadActivatedEvent event) {
+        ServiceCalendars last = compiled;
+        calendars = last != null && last.getUploadId() == event.uploadId() ? last : null;
+        compiled = null;
+    }
+
+    synchronized ServiceCalendars reload() {
+        ServiceCalendars loaded = readTransaction.execute(status -> {
+            Optional<GtfsUpload> active = uploadRepository.findByIsActiveTrue();
+            if (active.isEmpty()) {
+                return ServiceCalendars.EMPTY;
+            }
+            Map<String, ServiceCalendars.Days> services = new HashMap<>();
+            for (ServiceCalendar calendar : serviceCalendarRepository.findByUploadId(active.get().getId())) {
+                services.put(calendar.getServiceId(),
+                        new ServiceCalendars.Days(calendar.getFirstDate(), BitSet.valueOf(calendar.getDays())));
+            }
+            return new ServiceCalendars(active.get().getId(),
+                    List.copyOf(versionRepository.findVersionIds(active.get().getId())), services);
+        });
+        calendars = loaded;
+        return loaded;
+    }
+}
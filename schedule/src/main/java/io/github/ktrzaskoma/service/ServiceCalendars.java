@@ -0,0 +1,145 @@
+package io.github.ktrzaskoma.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The days every service of one upload runs on, as one bitset per service over the window it covers. Weekly
+// patterns of calendar.txt are expanded first and the dates of calendar_dates.txt applied on top, so whether a
+// service runs on a date is a single bit test.
+final class ServiceCalendars {
+
+    static final ServiceCalendars EMPTY = new ServiceCalendars(0, List.of(), Map.of());
+
+    private final long uploadId;
+    // The version chain of the upload, resolved once for the database queries that filter by it
+    private final List<Long> versionIds;
+    private final Map<String, Days> services;
+
+    ServiceCalendars(long uploadId, List<Long> versionIds, Map<String, Days> services) {
+        this.uploadId = uploadId;
+        this.versionIds = versionIds;
+        this.services = services;
+    }
+
+    long getUploadId() {
+        return uploadId;
+    }
+
+    List<Long> getVersionIds() {
+        return versionIds;
+    }
+
+    Map<String, Days> services() {
+        return services;
+    }
+
+    boolean runsOn(String serviceId, LocalDate date) {
+        Days days = services.get(serviceId);
+        return days != null && days.runsOn(date);
+    }
+
+    List<String> servicesOn(LocalDate date) {
+        List<String> running = new ArrayList<>();
+        services.forEach((serviceId, days) -> {
+            if (days.runsOn(date)) {
+                running.add(serviceId);
+            }
+        });
+        return running;
+    }
+
+    // Bit d stands for firstDate + d
+    record Days(LocalDate firstDate, BitSet days) {
+
+        boolean runsOn(LocalDate date) {
+            long day = ChronoUnit.DAYS.between(firstDate, date);
+            return day >= 0 && day < days.length() && days.get((int) day);
+        }
+    }
+
+    static final class Compiler {
+
+        private final Map<String, List<WeeklyPattern>> weeklyPatterns = new HashMap<>();
+        private final Map<String, List<DateChange>> dateChanges = new HashMap<>();
+
+        // Bit 0 of weekdays is Monday, bit 6 Sunday
+        void addWeeklyCalendar(String serviceId, int weekdays, LocalDate startDate, LocalDate endDate) {
+            weeklyPatterns.computeIfAbsent(serviceId, key -> new ArrayList<>())
+                    .add(new WeeklyPattern(weekdays, startDate, endDate));
+        }
+
+        void addCalendarDate(String serviceId, LocalDate date, int exceptionType) {
+            dateChanges.computeIfAbsent(serviceId, key -> new ArrayList<>()).add(new DateChange(date, exceptionType));
+        }
+
+        ServiceCalendars compile(long uploadId, List<Long> versionIds) {
+            Map<String, Days> services = new HashMap<>();
+            weeklyPatterns.keySet().forEach(serviceId -> services.put(serviceId, compile(serviceId)));
+            dateChanges.keySet().forEach(serviceId -> services.computeIfAbsent(serviceId, this::compile));
+            services.values().removeIf(days -> days.days().isEmpty());
+            return new ServiceCalendars(uploadId, versionIds, services);
+        }
+
+        private Days compile(String serviceId) {
+            List<WeeklyPattern> patterns = weeklyPatterns.getOrDefault(serviceId, List.of());
+            List<DateChange> dates = dateChanges.getOrDefault(serviceId, List.of());
+
+            // Removed dates outside the weekly patterns change nothing, so only added ones widen the window
+            LocalDate firstDate = null;
+            for (WeeklyPattern pattern : patterns) {
+                firstDate = earliest(firstDate, pattern.startDate());
+            }
+            for (DateChange change : dates) {
+                if (change.type() == 1) {
+                    firstDate = earliest(firstDate, change.date());
+                }
+            }
+            if (firstDate == null) {
+                return new Days(LocalDate.EPOCH, new BitSet());
+            }
+
+            BitSet days = new BitSet();
+            for (WeeklyPattern pattern : patterns) {
+                int first = (int) ChronoUnit.DAYS.between(firstDate, pattern.startDate());
+                int last = (int) ChronoUnit.DAYS.between(firstDate, pattern.endDate());
+                DayOfWeek dayOfWeek = pattern.startDate().getDayOfWeek();
+                for (int day = first; day <= last; day++, dayOfWeek = dayOfWeek.plus(1)) {
+                    if ((pattern.weekdays() & 1 << dayOfWeek.ordinal()) != 0) {
+                        days.set(day);
+                    }
+                }
+            }
+
+            // Removals are applied after additions, so a service that is both added and removed does not run
+            for (DateChange change : dates) {
+                if (change.type() == 1) {
+                    days.set((int) ChronoUnit.DAYS.between(firstDate, change.date()));
+                }
+            }
+            for (DateChange change : dates) {
+                long day = ChronoUnit.DAYS.between(firstDate, change.date());
+                if (change.type() == 2 && day >= 0) {
+                    days.clear((int) day);
+                }
+            }
+            return new Days(firstDate, days);
+        }
+
+        private static LocalDate earliest(LocalDate current, LocalDate date) {
+            return current == null || date.isBefore(current) ? date : current;
+        }
+
+        private record WeeklyPattern(int weekdays, LocalDate startDate, LocalDate endDate) {
+        }
+
+        // A row of calendar_dates.txt, type 1 adds the date and type 2 removes it
+        private record DateChange(LocalDate date, int type) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.ktrzaskoma.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.ktrzaskoma.dto.StopDto;
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import io.github.ktrzaskoma.repository.GtfsUploadVersionRepository;
+import io.github.ktrzaskoma.repository.StopRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+// The stops of the active upload, serialized once per activation in plain and gzip form. The ETag is derived
+// from the upload id, so clients that already hold the catalogue are answered without a body.
+@Service
+@Slf4j
+public class StopCatalogueService {
+
+    private final GtfsUploadRepository uploadRepository;
+    private final GtfsUploadVersionRepository versionRepository;
+    private final StopRepository stopRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+
+    private volatile StopCatalogue catalogue;
+
+    public StopCatalogueService(GtfsUploadRepository uploadRepository, GtfsUploadVersionRepository versionRepository,
+                                StopRepository stopRepository, ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager) {
+        this.uploadRepository = uploadRepository;
+        this.versionRepository = versionRepository;
+        this.stopRepository = stopRepository;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public StopCatalogue current() {
+        StopCatalogue current = catalogue;
+        return current != null ? current : rebuild();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        refresh();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadActivated(UploadActivatedEvent event) {
+        refresh();
+    }
+
+    private void refresh() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // The next request builds it, rather than serving the catalogue of an upload that is no longer active
+            catalogue = null;
+            log.error("Could not build the stop catalogue", e);
+        }
+    }
+
+    public synchronized StopCatalogue rebuild() {
+        StopCatalogue rebuilt = readTransaction.execute(status -> {
+            Optional<GtfsUpload> active = uploadRepository.findByIsActiveTrue();
+            long uploadId = active.map(GtfsUpload::getId).orElse(0L);
+            List<StopDto> stops = active
+                    .map(upload -> stopRepository.findVisibleStopDtos(versionRepository.findVersionIds(upload.getId())))
+                    .orElse(List.of());
+            return StopCatalogue.of(uploadId, serialize(stops));
+        });
+        catalogue = rebuilt;
+        log.info("Built stop catalogue of upload {}: {} bytes, {} gzipped", rebuilt.uploadId(), rebuilt.json().length,
+                rebuilt.gzip().length);
+        return rebuilt;
+    }
+
+    private byte[] serialize(List<StopDto> stops) {
+        try {
+            return objectMapper.writeValueAsBytes(stops);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the stop catalogue", e);
+        }
+    }
+
+    // Each encoding has its own strong ETag, either one means the client is up to date
+    public record StopCatalogue(long uploadId, byte[] json, byte[] gzip, String etag, String gzipEtag) {
+
+        static StopCatalogue of(long uploadId, byte[] json) {
+            return new StopCatalogue(uploadId, json, gzip(json), "\"stops-" + uploadId + "\"",
+                    "\"stops-" + uploadId + "-gzip\"");
+        }
+
+        public boolean isNotModified(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            return Arrays.stream(ifNoneMatch.split(","))
+                    .map(String::trim)
+                    .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag));
+        }
+
+        private static byte[] gzip(byte[] json) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.ktrzaskoma.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Word prefix index over stop names for autocomplete. Names and queries are folded to lower case ASCII, so
+// "podkowa lesna" finds "Podkowa Leśna Główna". Every word of the query has to start a word of the name.
+final class StopNameIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    private final String[] foldedNames;
+    // Every distinct word of every name, sorted, with the stop it belongs to
+    private final String[] words;
+    private final int[] wordStops;
+
+    StopNameIndex(String[] stopNames) {
+        this.foldedNames = new String[stopNames.length];
+        List<String> entries = new ArrayList<>();
+        List<Integer> entryStops = new ArrayList<>();
+        for (int stop = 0; stop < stopNames.length; stop++) {
+            foldedNames[stop] = fold(stopNames[stop]);
+            for (String word : words(foldedNames[stop])) {
+                entries.add(word);
+                entryStops.add(stop);
+            }
+        }
+
+        Integer[] order = new Integer[entries.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(entries::get));
+        this.words = new String[order.length];
+        this.wordStops = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            words[i] = entries.get(order[i]);
+            wordStops[i] = entryStops.get(order[i]);
+        }
+    }
+
+    // Lower case without Polish (and other) diacritics, with punctuation turned into single spaces
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        // Ł has no decomposed form, the others lose their marks in NFD
+        String lower = text.toLowerCase(Locale.ROOT).replace('ł', 'l');
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    // Best matches first: names starting with the whole query, then those whose first word matches the first
+    // query word, then shorter names
+    List<Integer> search(String query, int limit) {
+        String folded = fold(query);
+        Set<String> tokens = words(folded);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        BitSet matches = null;
+        for (String token : tokens) {
+            BitSet stops = stopsWithWordPrefix(token);
+            if (matches == null) {
+                matches = stops;
+            } else {
+                matches.and(stops);
+            }
+        }
+
+        String firstToken = tokens.iterator().next();
+        return matches.stream()
+                .boxed()
+                .sorted(Comparator.<Integer>comparingInt(stop -> foldedNames[stop].startsWith(folded) ? 0 : 1)
+                        .thenComparingInt(stop -> foldedNames[stop].startsWith(firstToken) ? 0 : 1)
+                        .thenComparingInt(stop -> foldedNames[stop].length())
+                        .thenComparing(stop -> foldedNames[stop]))
+                .limit(limit)
+                .toList();
+    }
+
+    private BitSet stopsWithWordPrefix(String prefix) {
+        BitSet stops = new BitSet(foldedNames.length);
+        for (int i = firstWordFrom(prefix); i < words.length && words[i].startsWith(prefix); i++) {
+            stops.set(wordStops[i]);
+        }
+        return stops;
+    }
+
+    // The same word occurs for many stops, so this searches for the first one not below the prefix
+    private int firstWordFrom(String prefix) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Set<String> words(String folded) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : folded.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
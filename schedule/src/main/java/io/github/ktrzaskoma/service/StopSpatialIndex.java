@@ -0,0 +1,158 @@
+package io.github.ktrzaskoma.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Static 2-d tree over the stops of a timetable. Coordinates are projected onto a plane in meters around the
+// mean latitude of the feed, which is accurate enough for the size of a regional network. The tree is implicit:
+// the stop in the middle of a range splits it, on x at even depths and on y at odd ones.
+final class StopSpatialIndex {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final double metersPerDegreeLon;
+    private final double metersPerDegreeLat;
+    private final int[] stops;
+    private final double[] xs;
+    private final double[] ys;
+
+    StopSpatialIndex(double[] lats, double[] lons) {
+        double meanLat = 0;
+        for (double lat : lats) {
+            meanLat += lat / lats.length;
+        }
+        this.metersPerDegreeLat = Math.toRadians(1) * EARTH_RADIUS_METERS;
+        this.metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(meanLat));
+        this.stops = new int[lats.length];
+        this.xs = new double[lats.length];
+        this.ys = new double[lats.length];
+        for (int stop = 0; stop < lats.length; stop++) {
+            stops[stop] = stop;
+            xs[stop] = lons[stop] * metersPerDegreeLon;
+            ys[stop] = lats[stop] * metersPerDegreeLat;
+        }
+        build(0, stops.length, 0);
+    }
+
+    // Up to limit stops within the radius, nearest first
+    List<Nearby> nearest(double lat, double lon, double radiusMeters, int limit) {
+        double x = lon * metersPerDegreeLon;
+        double y = lat * metersPerDegreeLat;
+        // Farthest candidate on top, so it is the one replaced by a nearer stop
+        PriorityQueue<Nearby> candidates =
+                new PriorityQueue<>(Comparator.comparingDouble(Nearby::distance).reversed());
+        nearest(0, stops.length, 0, x, y, radiusMeters, limit, candidates);
+        List<Nearby> result = new ArrayList<>(candidates);
+        result.sort(Comparator.comparingDouble(Nearby::distance));
+        return result;
+    }
+
+    // Stops inside the box, in no particular order
+    List<Integer> within(double minLat, double minLon, double maxLat, double maxLon) {
+        List<Integer> result = new ArrayList<>();
+        within(0, stops.length, 0, minLon * metersPerDegreeLon, minLat * metersPerDegreeLat,
+                maxLon * metersPerDegreeLon, maxLat * metersPerDegreeLat, result);
+        return result;
+    }
+
+    private void nearest(int low, int high, int depth, double x, double y, double radius, int limit,
+                         PriorityQueue<Nearby> candidates) {
+        if (low >= high) {
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        double distance = Math.hypot(xs[mid] - x, ys[mid] - y);
+        if (distance <= radius && (candidates.size() < limit || distance < candidates.peek().distance())) {
+            candidates.add(new Nearby(stops[mid], distance));
+            if (candidates.size() > limit) {
+                candidates.poll();
+            }
+        }
+
+        double delta = depth % 2 == 0 ? x - xs[mid] : y - ys[mid];
+        int nearLow = delta < 0 ? low : mid + 1;
+        int nearHigh = delta < 0 ? mid : high;
+        nearest(nearLow, nearHigh, depth + 1, x, y, radius, limit, candidates);
+        // The other side can only hold something nearer when the splitting line is within reach
+        double bound = candidates.size() < limit ? radius : Math.min(radius, candidates.peek().distance());
+        if (Math.abs(delta) <= bound) {
+            nearest(delta < 0 ? mid + 1 : low, delta < 0 ? high : mid, depth + 1, x, y, radius, limit, candidates);
+        }
+    }
+
+    private void within(int low, int high, int depth, double minX, double minY, double maxX, double maxY,
+                        List<Integer> result) {
+        if (low >= high) {
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        if (xs[mid] >= minX && xs[mid] <= maxX && ys[mid] >= minY && ys[mid] <= maxY) {
+            result.add(stops[mid]);
+        }
+        double split = depth % 2 == 0 ? xs[mid] : ys[mid];
+        double min = depth % 2 == 0 ? minX : minY;
+        double max = depth % 2 == 0 ? maxX : maxY;
+        if (min <= split) {
+            within(low, mid, depth + 1, minX, minY, maxX, maxY, result);
+        }
+        if (max >= split) {
+            within(mid + 1, high, depth + 1, minX, minY, maxX, maxY, result);
+        }
+    }
+
+    // Orders the range so that its middle element is the median on the axis of this depth, then the halves
+    private void build(int low, int high, int depth) {
+        if (high - low <= 1) {
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        select(low, high - 1, mid, depth % 2 == 0 ? xs : ys);
+        build(low, mid, depth + 1);
+        build(mid + 1, high, depth + 1);
+    }
+
+    // Quickselect of the k-th smallest coordinate, moving the stop arrays along
+    private void select(int left, int right, int k, double[] axis) {
+        while (left < right) {
+            double pivot = axis[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int stop = stops[i];
+        stops[i] = stops[j];
+        stops[j] = stop;
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+    }
+
+    // Distance in meters on the projected plane
+    record Nearby(int stop, double distance) {
+    }
+}
@@ -0,0 +1,718 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.repository.TimetableLoader;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable, array based copy of one timetable version. Stops, routes, trips and services are numbered densely
+// and everything else refers to them by those numbers. Queries read it without locks or database access.
+final class Timetable {
+
+    static final int SECONDS_PER_DAY = 24 * 3600;
+
+    // Used for footpaths of transfers.txt that give no minimum transfer time
+    private static final double WALKING_METERS_PER_SECOND = 1.2;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final long uploadId;
+
+    final String[] stopIds;
+    final String[] stopNames;
+    final double[] stopLats;
+    final double[] stopLons;
+    final int[] stopWheelchairBoarding;
+    private final Map<String, Integer> stopIndex;
+    final StopSpatialIndex stopSpatialIndex;
+    final StopNameIndex stopNameIndex;
+
+    // Seconds needed to change trips at a stop, and footpaths to other stops in compressed rows
+    final int[] stopTransferTimes;
+    final int[] footpathStart;
+    final int[] footpathTargets;
+    final int[] footpathTimes;
+
+    final String[] routeIds;
+    final String[] routeShortNames;
+    final String[] routeLongNames;
+
+    final String[] tripIds;
+    final int[] tripRoutes;
+    final int[] tripServices;
+    final String[] tripHeadsigns;
+    final int[] tripWheelchairAccessible;
+    final int[] tripBikesAllowed;
+    private final Map<String, Integer> tripIndex;
+
+    // One connection per pair of consecutive stops of a trip, sorted by departure time
+    final int[] connectionTrips;
+    final int[] connectionFromStops;
+    final int[] connectionToStops;
+    final int[] connectionDepartures;
+    final int[] connectionArrivals;
+
+    // Departures from every stop sorted by time, in compressed rows taken from the sorted connections
+    final int[] stopDepartureStart;
+    final int[] stopDepartureTimes;
+    final int[] stopDepartureTrips;
+
+    // Trips with the same stop sequence that never overtake each other share a pattern. Patterns split off the
+    // same sequence point at one copy of its stops. The trips of a pattern are sorted by departure and their times
+    // are stored trip by trip, the time of trip t at stop i of pattern p is at
+    // patternTimeStart[p] + t * patternStopCounts[p] + i.
+    final int[] patternStopStart;
+    final int[] patternStopCounts;
+    final int[] patternStops;
+    final int[] patternTripStart;
+    final int[] patternTrips;
+    final int[] patternTimeStart;
+    final int[] patternArrivals;
+    final int[] patternDepartures;
+    final int[] tripPatterns;
+    final int[] tripPatternPositions;
+
+    // Patterns calling at each stop, with the position of the stop's first call in the pattern
+    final int[] stopPatternStart;
+    final int[] stopPatterns;
+    final int[] stopPatternPositions;
+
+    // Bit s of day d is set when service s runs on firstServiceDay + d
+    private final LocalDate firstServiceDay;
+    private final BitSet[] servicesByDay;
+
+    private Timetable(Builder builder, int[][] connections) {
+        this.uploadId = builder.uploadId;
+        this.stopIds = builder.stopIds.toArray(String[]::new);
+        this.stopNames = builder.stopNames.toArray(String[]::new);
+        this.stopLats = builder.stopLats.toArray();
+        this.stopLons = builder.stopLons.toArray();
+        this.stopWheelchairBoarding = builder.stopWheelchairBoarding.toArray();
+        this.stopIndex = indexOf(stopIds);
+        this.stopSpatialIndex = new StopSpatialIndex(stopLats, stopLons);
+        this.stopNameIndex = new StopNameIndex(stopNames);
+        this.stopTransferTimes = builder.stopTransferTimes;
+        this.footpathStart = builder.footpathStart;
+        this.footpathTargets = builder.footpathTargets;
+        this.footpathTimes = builder.footpathTimes;
+        this.routeIds = builder.routeIds.toArray(String[]::new);
+        this.routeShortNames = builder.routeShortNames.toArray(String[]::new);
+        this.routeLongNames = builder.routeLongNames.toArray(String[]::new);
+        this.tripIds = builder.tripIds.toArray(String[]::new);
+        this.tripRoutes = builder.tripRoutes.toArray();
+        this.tripServices = builder.tripServices.toArray();
+        this.tripHeadsigns = builder.tripHeadsigns.toArray(String[]::new);
+        this.tripWheelchairAccessible = builder.tripWheelchairAccessible.toArray();
+        this.tripBikesAllowed = builder.tripBikesAllowed.toArray();
+        this.tripIndex = indexOf(tripIds);
+        this.connectionTrips = connections[0];
+        this.connectionFromStops = connections[1];
+        this.connectionToStops = connections[2];
+        this.connectionDepartures = connections[3];
+        this.connectionArrivals = connections[4];
+        this.stopDepartureStart = new int[stopIds.length + 1];
+        this.stopDepartureTimes = new int[connectionTrips.length];
+        this.stopDepartureTrips = new int[connectionTrips.length];
+        indexStopDepartures();
+        this.patternStopStart = builder.patternStopStart.toArray();
+        this.patternStopCounts = builder.patternStopCounts.toArray();
+        this.patternStops = builder.patternStops.toArray();
+        this.patternTripStart = builder.patternTripStart.toArray();
+        this.patternTrips = builder.patternTrips.toArray();
+        this.patternTimeStart = builder.patternTimeStart.toArray();
+        this.patternArrivals = builder.patternArrivals.toArray();
+        this.patternDepartures = builder.patternDepartures.toArray();
+        this.tripPatterns = builder.tripPatterns;
+        this.tripPatternPositions = builder.tripPatternPositions;
+        this.stopPatternStart = builder.stopPatternStart;
+        this.stopPatterns = builder.stopPatterns;
+        this.stopPatternPositions = builder.stopPatternPositions;
+        this.firstServiceDay = builder.firstServiceDay;
+        this.servicesByDay = builder.servicesByDay;
+    }
+
+    static Timetable load(long uploadId, List<Long> versionIds, TimetableLoader loader, int defaultTransferTime) {
+        Builder builder = new Builder(uploadId, defaultTransferTime);
+        loader.readStops(versionIds, builder::addStop);
+        loader.readRoutes(versionIds, builder::addRoute);
+        loader.readTrips(versionIds, builder::addTrip);
+        loader.readStopTimes(versionIds, builder::addStopTime);
+        loader.readServiceCalendars(uploadId, builder::addServiceCalendar);
+        loader.readTransfers(versionIds, builder::addTransfer);
+        return builder.build();
+    }
+
+    long getUploadId() {
+        return uploadId;
+    }
+
+    int stopCount() {
+        return stopIds.length;
+    }
+
+    int connectionCount() {
+        return connectionTrips.length;
+    }
+
+    int patternCount() {
+        return patternTimeStart.length;
+    }
+
+    int patternStopCount(int pattern) {
+        return patternStopCounts[pattern];
+    }
+
+    int patternTripCount(int pattern) {
+        return patternTripStart[pattern + 1] - patternTripStart[pattern];
+    }
+
+    // Position of a stop time in patternArrivals and patternDepartures
+    int patternTime(int pattern, int tripPosition, int stopPosition) {
+        return patternTimeStart[pattern] + tripPosition * patternStopCount(pattern) + stopPosition;
+    }
+
+    // Position of the first trip of the pattern that departs from the given stop position at or after the time
+    int firstPatternTripFrom(int pattern, int stopPosition, int time) {
+        int low = 0;
+        int high = patternTripCount(pattern);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (patternDepartures[patternTime(pattern, mid, stopPosition)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // -1 when the stop is not part of this timetable
+    int stop(String stopId) {
+        return stopIndex.getOrDefault(stopId, -1);
+    }
+
+    int trip(String tripId) {
+        return tripIndex.getOrDefault(tripId, -1);
+    }
+
+    // Days are counted from the first day any service runs, -1 for dates the feed does not cover
+    int serviceDay(LocalDate date) {
+        if (firstServiceDay == null) {
+            return -1;
+        }
+        long day = ChronoUnit.DAYS.between(firstServiceDay, date);
+        return day >= 0 && day < servicesByDay.length ? (int) day : -1;
+    }
+
+    boolean runsOn(int trip, int serviceDay) {
+        return serviceDay >= 0 && servicesByDay[serviceDay].get(tripServices[trip]);
+    }
+
+    // Index of the first connection departing at or after the given time
+    int firstConnectionFrom(int time) {
+        int low = 0;
+        int high = connectionDepartures.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (connectionDepartures[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Position in stopDepartureTimes of the first departure from the stop at or after the given time
+    int firstDepartureFrom(int stop, int time) {
+        int low = stopDepartureStart[stop];
+        int high = stopDepartureStart[stop + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (stopDepartureTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Last stop of the trip, -1 for trips with fewer than two stop times
+    int lastStop(int trip) {
+        int pattern = tripPatterns[trip];
+        return pattern < 0 ? -1 : patternStops[patternStopStart[pattern] + patternStopCounts[pattern] - 1];
+    }
+
+    private void indexStopDepartures() {
+        for (int stop : connectionFromStops) {
+            stopDepartureStart[stop + 1]++;
+        }
+        for (int stop = 0; stop < stopIds.length; stop++) {
+            stopDepartureStart[stop + 1] += stopDepartureStart[stop];
+        }
+        // Connections are sorted by departure, so each stop's departures come out sorted as well
+        int[] next = Arrays.copyOf(stopDepartureStart, stopIds.length);
+        for (int connection = 0; connection < connectionTrips.length; connection++) {
+            int slot = next[connectionFromStops[connection]]++;
+            stopDepartureTimes[slot] = connectionDepartures[connection];
+            stopDepartureTrips[slot] = connectionTrips[connection];
+        }
+    }
+
+    private static Map<String, Integer> indexOf(String[] ids) {
+        Map<String, Integer> index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.putIfAbsent(ids[i], i);
+        }
+        return index;
+    }
+
+    private static final class Builder {
+
+        private final long uploadId;
+
+        private final int defaultTransferTime;
+
+        private final Map<Long, Integer> stopsByKey = new HashMap<>();
+        private final Map<String, Integer> stopsById = new HashMap<>();
+        private final List<String> stopIds = new ArrayList<>();
+        private final List<String> stopNames = new ArrayList<>();
+        private final DoubleList stopLats = new DoubleList();
+        private final DoubleList stopLons = new DoubleList();
+        private final IntList stopWheelchairBoarding = new IntList();
+
+        private final Map<Long, Integer> routesByKey = new HashMap<>();
+        private final List<String> routeIds = new ArrayList<>();
+        private final List<String> routeShortNames = new ArrayList<>();
+        private final List<String> routeLongNames = new ArrayList<>();
+
+        private final Map<Long, Integer> tripsByKey = new HashMap<>();
+        private final List<String> tripIds = new ArrayList<>();
+        private final IntList tripRoutes = new IntList();
+        private final IntList tripServices = new IntList();
+        private final List<String> tripHeadsigns = new ArrayList<>();
+        private final IntList tripWheelchairAccessible = new IntList();
+        private final IntList tripBikesAllowed = new IntList();
+        private final Map<String, Integer> services = new HashMap<>();
+
+        // Stop times of every trip, the rows of a trip are contiguous
+        private final IntList tripFirstRows = new IntList();
+        private final IntList tripRowCounts = new IntList();
+        private final IntList rowStops = new IntList();
+        private final IntList rowArrivals = new IntList();
+        private final IntList rowDepartures = new IntList();
+
+        private final IntList connectionTrips = new IntList();
+        private final IntList connectionFromStops = new IntList();
+        private final IntList connectionToStops = new IntList();
+        private final IntList connectionDepartures = new IntList();
+        private final IntList connectionArrivals = new IntList();
+
+        // The previous stop of the trip whose rows are being read
+        private long currentTripKey = -1;
+        private int previousStop = -1;
+        private int previousDeparture;
+
+        private final Map<Integer, ServiceCalendars.Days> serviceCalendars = new HashMap<>();
+        private LocalDate firstServiceDay;
+        private BitSet[] servicesByDay = new BitSet[0];
+
+        private final IntList footpathFromStops = new IntList();
+        private final IntList footpathToStops = new IntList();
+        private final IntList footpathDurations = new IntList();
+        private int[] stopTransferTimes;
+        private int[] footpathStart;
+        private int[] footpathTargets;
+        private int[] footpathTimes;
+
+        private final IntList patternStopStart = new IntList();
+        private final IntList patternStopCounts = new IntList();
+        private final IntList patternStops = new IntList();
+        private final IntList patternTripStart = new IntList();
+        private final IntList patternTrips = new IntList();
+        private final IntList patternTimeStart = new IntList();
+        private final IntList patternArrivals = new IntList();
+        private final IntList patternDepartures = new IntList();
+        private int[] tripPatterns;
+        private int[] tripPatternPositions;
+        private int[] stopPatternStart;
+        private int[] stopPatterns;
+        private int[] stopPatternPositions;
+
+        private Builder(long uploadId, int defaultTransferTime) {
+            this.uploadId = uploadId;
+            this.defaultTransferTime = defaultTransferTime;
+        }
+
+        private void addStop(long id, String stopId, String stopName, double stopLat, double stopLon,
+                             int wheelchairBoarding) {
+            stopsByKey.put(id, stopIds.size());
+            stopsById.putIfAbsent(stopId, stopIds.size());
+            stopIds.add(stopId);
+            stopNames.add(stopName);
+            stopLats.add(stopLat);
+            stopLons.add(stopLon);
+            stopWheelchairBoarding.add(wheelchairBoarding);
+        }
+
+        private void addRoute(long id, String routeId, String routeShortName, String routeLongName, int routeType) {
+            routesByKey.put(id, routeIds.size());
+            routeIds.add(routeId);
+            routeShortNames.add(routeShortName);
+            routeLongNames.add(routeLongName);
+        }
+
+        private void addTrip(long id, String tripId, long routeId, String serviceId, String tripHeadsign,
+                             int wheelchairAccessible, int bikesAllowed) {
+            Integer route = routesByKey.get(routeId);
+            if (route == null) {
+                return;
+            }
+            tripsByKey.put(id, tripIds.size());
+            tripIds.add(tripId);
+            tripRoutes.add(route);
+            tripServices.add(services.computeIfAbsent(serviceId, key -> services.size()));
+            tripHeadsigns.add(tripHeadsign);
+            tripWheelchairAccessible.add(wheelchairAccessible);
+            tripBikesAllowed.add(bikesAllowed);
+            tripFirstRows.add(-1);
+            tripRowCounts.add(0);
+        }
+
+        // Times are service day seconds, so the stops of a trip that runs past midnight are already in order
+        private void addStopTime(long tripKey, long stopKey, int stopSequence, int arrival, int departure) {
+            Integer trip = tripsByKey.get(tripKey);
+            Integer stop = stopsByKey.get(stopKey);
+            if (trip == null || stop == null) {
+                return;
+            }
+            if (tripKey != currentTripKey) {
+                currentTripKey = tripKey;
+                previousStop = -1;
+            }
+
+            if (previousStop >= 0) {
+                connectionTrips.add(trip);
+                connectionFromStops.add(previousStop);
+                connectionToStops.add(stop);
+                connectionDepartures.add(previousDeparture);
+                connectionArrivals.add(arrival);
+            }
+            previousStop = stop;
+            previousDeparture = departure;
+
+            if (tripFirstRows.get(trip) < 0) {
+                tripFirstRows.set(trip, rowStops.size());
+            }
+            tripRowCounts.set(trip, tripRowCounts.get(trip) + 1);
+            rowStops.add(stop);
+            rowArrivals.add(arrival);
+            rowDepartures.add(departure);
+        }
+
+        private void addServiceCalendar(String serviceId, LocalDate firstDate, byte[] days) {
+            Integer service = services.get(serviceId);
+            if (service != null) {
+                serviceCalendars.put(service, new ServiceCalendars.Days(firstDate, BitSet.valueOf(days)));
+            }
+        }
+
+        // Transfers within a stop set its transfer time, transfers between stops become footpaths
+        private void addTransfer(String fromStopId, String toStopId, int transferType, int minTransferTime) {
+            Integer from = stopsById.get(fromStopId);
+            Integer to = stopsById.get(toStopId);
+            if (from == null || to == null || transferType == 3) {
+                return;
+            }
+            if (from.equals(to)) {
+                if (minTransferTime >= 0) {
+                    footpathFromStops.add(from);
+                    footpathToStops.add(from);
+                    footpathDurations.add(minTransferTime);
+                }
+                return;
+            }
+            footpathFromStops.add(from);
+            footpathToStops.add(to);
+            footpathDurations.add(minTransferTime >= 0 ? minTransferTime : walkingTime(from, to));
+        }
+
+        private int walkingTime(int from, int to) {
+            double lat1 = Math.toRadians(stopLats.get(from));
+            double lat2 = Math.toRadians(stopLats.get(to));
+            double dLat = lat2 - lat1;
+            double dLon = Math.toRadians(stopLons.get(to) - stopLons.get(from));
+            double a = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(dLon / 2), 2);
+            double meters = 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+            return (int) Math.ceil(meters / WALKING_METERS_PER_SECOND);
+        }
+
+        private Timetable build() {
+            buildServiceDays();
+            buildTransfers();
+            buildPatterns();
+            return new Timetable(this, sortConnections());
+        }
+
+        private void buildTransfers() {
+            int stopCount = stopIds.size();
+            stopTransferTimes = new int[stopCount];
+            Arrays.fill(stopTransferTimes, defaultTransferTime);
+            footpathStart = new int[stopCount + 1];
+            for (int i = 0; i < footpathFromStops.size(); i++) {
+                if (footpathFromStops.get(i) == footpathToStops.get(i)) {
+                    stopTransferTimes[footpathFromStops.get(i)] = footpathDurations.get(i);
+                } else {
+                    footpathStart[footpathFromStops.get(i) + 1]++;
+                }
+            }
+            for (int stop = 0; stop < stopCount; stop++) {
+                footpathStart[stop + 1] += footpathStart[stop];
+            }
+            footpathTargets = new int[footpathStart[stopCount]];
+            footpathTimes = new int[footpathStart[stopCount]];
+            int[] next = Arrays.copyOf(footpathStart, stopCount);
+            for (int i = 0; i < footpathFromStops.size(); i++) {
+                int from = footpathFromStops.get(i);
+                if (from != footpathToStops.get(i)) {
+                    footpathTargets[next[from]] = footpathToStops.get(i);
+                    footpathTimes[next[from]++] = footpathDurations.get(i);
+                }
+            }
+        }
+
+        private void buildPatterns() {
+            int tripCount = tripIds.size();
+            tripPatterns = new int[tripCount];
+            tripPatternPositions = new int[tripCount];
+            Arrays.fill(tripPatterns, -1);
+
+            Map<StopSequence, List<Integer>> sequences = new LinkedHashMap<>();
+            for (int trip = 0; trip < tripCount; trip++) {
+                if (tripRowCounts.get(trip) >= 2) {
+                    int first = tripFirstRows.get(trip);
+                    int[] stops = rowStops.slice(first, first + tripRowCounts.get(trip));
+                    sequences.computeIfAbsent(new StopSequence(stops), key -> new ArrayList<>()).add(trip);
+                }
+            }
+
+            sequences.forEach((sequence, trips) -> {
+                trips.sort(Comparator.comparingInt(trip -> rowDepartures.get(tripFirstRows.get(trip))));
+                // A trip that overtakes an earlier one starts another pattern, binary search needs ordered times
+                List<List<Integer>> patterns = new ArrayList<>();
+                for (int trip : trips) {
+                    List<Integer> pattern = patterns.stream()
+                            .filter(candidate -> precedes(candidate.get(candidate.size() - 1), trip))
+                            .findFirst()
+                            .orElse(null);
+                    if (pattern == null) {
+                        pattern = new ArrayList<>();
+                        patterns.add(pattern);
+                    }
+                    pattern.add(trip);
+                }
+                int stopStart = patternStops.size();
+                for (int stop : sequence.stops()) {
+                    patternStops.add(stop);
+                }
+                patterns.forEach(pattern -> addPattern(stopStart, sequence.stops(), pattern));
+            });
+            patternTripStart.add(patternTrips.size());
+            buildStopPatterns();
+        }
+
+        private boolean precedes(int earlier, int later) {
+            int earlierRow = tripFirstRows.get(earlier);
+            int laterRow = tripFirstRows.get(later);
+            for (int i = 0; i < tripRowCounts.get(earlier); i++) {
+                if (rowArrivals.get(earlierRow + i) > rowArrivals.get(laterRow + i)
+                        || rowDepartures.get(earlierRow + i) > rowDepartures.get(laterRow + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void addPattern(int stopStart, int[] stops, List<Integer> trips) {
+            int pattern = patternTimeStart.size();
+            patternStopStart.add(stopStart);
+            patternStopCounts.add(stops.length);
+            patternTripStart.add(patternTrips.size());
+            patternTimeStart.add(patternArrivals.size());
+            for (int position = 0; position < trips.size(); position++) {
+                int trip = trips.get(position);
+                tripPatterns[trip] = pattern;
+                tripPatternPositions[trip] = position;
+                patternTrips.add(trip);
+                int row = tripFirstRows.get(trip);
+                for (int i = 0; i < stops.length; i++) {
+                    patternArrivals.add(rowArrivals.get(row + i));
+                    patternDepartures.add(rowDepartures.get(row + i));
+                }
+            }
+        }
+
+        private void buildStopPatterns() {
+            int stopCount = stopIds.size();
+            int patternCount = patternTimeStart.size();
+            IntList stops = new IntList();
+            IntList patterns = new IntList();
+            IntList positions = new IntList();
+            for (int pattern = 0; pattern < patternCount; pattern++) {
+                int start = patternStopStart.get(pattern);
+                int end = start + patternStopCounts.get(pattern);
+                for (int i = start; i < end; i++) {
+                    // Only the first call of a stop is indexed, a scan from there passes the later ones too
+                    if (patternStops.indexOf(patternStops.get(i), start, i) < 0) {
+                        stops.add(patternStops.get(i));
+                        patterns.add(pattern);
+                        positions.add(i - start);
+                    }
+                }
+            }
+
+            stopPatternStart = new int[stopCount + 1];
+            for (int i = 0; i < stops.size(); i++) {
+                stopPatternStart[stops.get(i) + 1]++;
+            }
+            for (int stop = 0; stop < stopCount; stop++) {
+                stopPatternStart[stop + 1] += stopPatternStart[stop];
+            }
+            stopPatterns = new int[stops.size()];
+            stopPatternPositions = new int[stops.size()];
+            int[] next = Arrays.copyOf(stopPatternStart, stopCount);
+            for (int i = 0; i < stops.size(); i++) {
+                int slot = next[stops.get(i)]++;
+                stopPatterns[slot] = patterns.get(i);
+                stopPatternPositions[slot] = positions.get(i);
+            }
+        }
+
+        // Turned around from one bitset per service into one per day, planners test many trips of the same day
+        private void buildServiceDays() {
+            if (serviceCalendars.isEmpty()) {
+                return;
+            }
+            firstServiceDay = serviceCalendars.values().stream().map(ServiceCalendars.Days::firstDate)
+                    .min(LocalDate::compareTo).orElseThrow();
+            LocalDate lastServiceDay = serviceCalendars.values().stream()
+                    .map(days -> days.firstDate().plusDays(days.days().length() - 1))
+                    .max(LocalDate::compareTo).orElseThrow();
+            servicesByDay = new BitSet[(int) ChronoUnit.DAYS.between(firstServiceDay, lastServiceDay) + 1];
+            for (int day = 0; day < servicesByDay.length; day++) {
+                servicesByDay[day] = new BitSet(services.size());
+            }
+
+            serviceCalendars.forEach((service, days) -> {
+                int offset = (int) ChronoUnit.DAYS.between(firstServiceDay, days.firstDate());
+                days.days().stream().forEach(day -> servicesByDay[offset + day].set(service));
+            });
+        }
+
+        private int[][] sortConnections() {
+            // Departure time and position packed into one long, so a primitive sort orders the connections
+            int count = connectionTrips.size();
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (long) connectionDepartures.get(i) << 32 | i;
+            }
+            Arrays.sort(order);
+
+            int[][] sorted = new int[5][count];
+            for (int i = 0; i < count; i++) {
+                int source = (int) order[i];
+                sorted[0][i] = connectionTrips.get(source);
+                sorted[1][i] = connectionFromStops.get(source);
+                sorted[2][i] = connectionToStops.get(source);
+                sorted[3][i] = connectionDepartures.get(source);
+                sorted[4][i] = connectionArrivals.get(source);
+            }
+            return sorted;
+        }
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Position of the value between from and to, -1 when it is not there
+        int indexOf(int value, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int[] slice(int from, int to) {
+            return Arrays.copyOfRange(values, from, to);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private record StopSequence(int[] stops) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StopSequence sequence && Arrays.equals(stops, sequence.stops);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(stops);
+        }
+    }
+
+    private static final class DoubleList {
+
+        private double[] values = new double[1024];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double get(int index) {
+            return values[index];
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import io.github.ktrzaskoma.repository.GtfsUploadVersionRepository;
+import io.github.ktrzaskoma.repository.TimetableLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+// Holds the in-memory timetable of the active upload. It is rebuilt after every activation and swapped in
+// as a whole, queries keep using the previous one until the new one is complete.
+@Service
+@Slf4j
+public class TimetableService {
+
+    private final GtfsUploadRepository uploadRepository;
+    private final GtfsUploadVersionRepository versionRepository;
+    private final TimetableLoader timetableLoader;
+    private final TransactionTemplate readTransaction;
+    private final int defaultTransferTime;
+
+    private volatile Timetable timetable;
+
+    public TimetableService(GtfsUploadRepository uploadRepository, GtfsUploadVersionRepository versionRepository,
+                            TimetableLoader timetableLoader, PlatformTransactionManager transactionManager,
+                            @Value("${gtfs.planner.min-transfer-seconds:120}") int defaultTransferTime) {
+        this.uploadRepository = uploadRepository;
+        this.versionRepository = versionRepository;
+        this.timetableLoader = timetableLoader;
+        // Activation events arrive after the commit of the switch, the load needs a transaction of its own
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.defaultTransferTime = defaultTransferTime;
+    }
+
+    Optional<Timetable> current() {
+        return Optional.ofNullable(timetable);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadActivated(UploadActivatedEvent event) {
+        rebuild();
+    }
+
+    // Always loads whatever is active when it runs, so activations that overtake each other end on the latest
+    public synchronized void rebuild() {
+        long startTime = System.nanoTime();
+        try {
+            Timetable rebuilt = readTransaction.execute(status -> {
+                Optional<GtfsUpload> active = uploadRepository.findByIsActiveTrue();
+                if (active.isEmpty()) {
+                    return null;
+                }
+                List<Long> versionIds = versionRepository.findVersionIds(active.get().getId());
+                return Timetable.load(active.get().getId(), versionIds, timetableLoader, defaultTransferTime);
+            });
+            timetable = rebuilt;
+            if (rebuilt != null) {
+                log.info("Built timetable of upload {}: {} stops, {} connections in {} ms", rebuilt.getUploadId(),
+                        rebuilt.stopCount(), rebuilt.connectionCount(), (System.nanoTime() - startTime) / 1_000_000);
+            }
+        } catch (RuntimeException e) {
+            // Queries fall back to the database rather than answering from a timetable that is no longer active
+            timetable = null;
+            log.error("Could not build the in-memory timetable", e);
+        }
+    }
+}
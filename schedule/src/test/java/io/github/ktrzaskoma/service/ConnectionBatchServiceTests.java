@@ -0,0 +1,161 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.config.ScheduleQueryConfig;
+import io.github.ktrzaskoma.dto.ConnectionBatchResultDto;
+import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.dto.ConnectionQueryDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConnectionBatchServiceTests {
+
+	private static final LocalDate DATE = LocalDate.of(2026, 10, 20);
+	private static final LocalTime TIME = LocalTime.of(8, 0);
+
+	private final ScheduleService scheduleService = mock(ScheduleService.class);
+
+	// Holds back the queries that wait on it until the test is done with them
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private ThreadPoolTaskExecutor executor;
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		executor.shutdown();
+	}
+
+	@Test
+	void findConnectionsAnswersInRequestOrder() {
+		ConnectionBatchService batchService = batchService(4, 100, Duration.ofSeconds(5));
+		answer("A", () -> {
+			Thread.sleep(200);
+			return List.of(connection("SLOW"));
+		});
+		answer("B", () -> List.of(connection("FAST")));
+		answer("C", List::of);
+
+		List<ConnectionBatchResultDto> results = batchService.findConnections(List.of(query("A"), query("B"),
+				query("C")));
+
+		assertEquals(List.of("A", "B", "C"), results.stream().map(ConnectionBatchResultDto::getFromStopId).toList());
+		assertEquals(List.of(ConnectionBatchResultDto.Status.OK, ConnectionBatchResultDto.Status.OK,
+				ConnectionBatchResultDto.Status.OK), statuses(results));
+		assertEquals("SLOW", results.get(0).getConnections().get(0).getTripId());
+		assertEquals("FAST", results.get(1).getConnections().get(0).getTripId());
+		assertEquals(List.of(), results.get(2).getConnections());
+		assertEquals(DATE, results.get(0).getDate());
+		assertEquals(TIME, results.get(0).getTime());
+	}
+
+	@Test
+	void findConnectionsReportsQueriesPastTheDeadlineAsTimedOut() {
+		ConnectionBatchService batchService = batchService(4, 100, Duration.ofMillis(200));
+		answer("A", () -> List.of(connection("T1")));
+		answer("B", () -> {
+			release.await();
+			return List.of(connection("T2"));
+		});
+
+		long startTime = System.nanoTime();
+		List<ConnectionBatchResultDto> results = batchService.findConnections(List.of(query("A"), query("B")));
+
+		assertEquals(List.of(ConnectionBatchResultDto.Status.OK, ConnectionBatchResultDto.Status.TIMED_OUT),
+				statuses(results));
+		assertEquals(List.of(), results.get(1).getConnections());
+		assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	void findConnectionsKeepsAFailedQueryFromTheOthers() {
+		ConnectionBatchService batchService = batchService(4, 100, Duration.ofSeconds(5));
+		answer("A", () -> List.of(connection("T1")));
+		answer("B", () -> {
+			throw new IllegalStateException("Lost the database");
+		});
+		answer("C", () -> List.of(connection("T3")));
+
+		List<ConnectionBatchResultDto> results = batchService.findConnections(List.of(query("A"), query("B"),
+				query("C")));
+
+		assertEquals(List.of(ConnectionBatchResultDto.Status.OK, ConnectionBatchResultDto.Status.FAILED,
+				ConnectionBatchResultDto.Status.OK), statuses(results));
+		assertEquals("Lost the database", results.get(1).getMessage());
+		assertEquals("T3", results.get(2).getConnections().get(0).getTripId());
+	}
+
+	@Test
+	void findConnectionsReportsQueriesTheFullPoolTurnsAwayAsRejected() {
+		// One thread and no queue, the first query keeps the pool busy
+		ConnectionBatchService batchService = batchService(1, 0, Duration.ofMillis(200));
+		answer("A", () -> {
+			release.await();
+			return List.of();
+		});
+		answer("B", () -> List.of(connection("T2")));
+
+		List<ConnectionBatchResultDto> results = batchService.findConnections(List.of(query("A"), query("B")));
+
+		assertEquals(List.of(ConnectionBatchResultDto.Status.TIMED_OUT, ConnectionBatchResultDto.Status.REJECTED),
+				statuses(results));
+		assertEquals(List.of(), results.get(1).getConnections());
+	}
+
+	@Test
+	void findConnectionsRejectsBatchesOverTheLimit() {
+		ConnectionBatchService batchService = batchService(4, 100, Duration.ofSeconds(5));
+
+		assertThrows(IllegalArgumentException.class, () -> batchService.findConnections(List.of()));
+		assertThrows(IllegalArgumentException.class, () -> batchService.findConnections(List.of(query("A"),
+				query("B"), query("C"), query("D"))));
+		assertThrows(IllegalArgumentException.class, () -> batchService.findConnections(List.of(
+				ConnectionQueryDto.builder().fromStopId("A").build())));
+	}
+
+	private ConnectionBatchService batchService(int parallelism, int queueCapacity, Duration timeout) {
+		executor = new ScheduleQueryConfig().scheduleQueryExecutor(parallelism, queueCapacity);
+		executor.initialize();
+		ConnectionBatchService batchService = new ConnectionBatchService(scheduleService, executor);
+		ReflectionTestUtils.setField(batchService, "maxQueries", 3);
+		ReflectionTestUtils.setField(batchService, "timeout", timeout);
+		return batchService;
+	}
+
+	private void answer(String fromStopId, Connections answer) {
+		when(scheduleService.findConnections(eq(fromStopId), any(), any(), any()))
+				.thenAnswer(invocation -> answer.connections());
+	}
+
+	private ConnectionQueryDto query(String fromStopId) {
+		return ConnectionQueryDto.builder().fromStopId(fromStopId).toStopId("Z").date(DATE).time(TIME).build();
+	}
+
+	private ConnectionDto connection(String tripId) {
+		return ConnectionDto.builder().tripId(tripId).build();
+	}
+
+	private List<ConnectionBatchResultDto.Status> statuses(List<ConnectionBatchResultDto> results) {
+		return results.stream().map(ConnectionBatchResultDto::getStatus).toList();
+	}
+
+	private interface Connections {
+		List<ConnectionDto> connections() throws Exception;
+	}
+}
@@ -0,0 +1,104 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static io.github.ktrzaskoma.service.TimetableFixture.DAY;
+import static io.github.ktrzaskoma.service.TimetableFixture.time;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionScannerTests {
+
+	@Test
+	void directTripsComeInDepartureOrder() {
+		Timetable timetable = line()
+				.trip("T1", "R1", "WD", "A 08:00", "B 08:30", "C 09:00")
+				.trip("SLOW", "R1", "WD", "A 07:50", "B 08:40", "C 09:30")
+				.trip("FAST", "R1", "WD", "A 08:10", "C 08:40")
+				.trip("BACK", "R1", "WD", "C 08:00", "B 08:30", "A 09:00")
+				.build();
+
+		List<Journey.Leg> legs = directTrips(timetable, "A", "C", "07:00", 10);
+
+		assertEquals(List.of("SLOW", "T1", "FAST"), tripIds(timetable, legs));
+		assertEquals(time("07:50"), legs.get(0).departure());
+		assertEquals(time("09:30"), legs.get(0).arrival());
+		assertEquals(List.of("FAST"), tripIds(timetable, directTrips(timetable, "A", "C", "08:05", 10)));
+		assertEquals(List.of("BACK"), tripIds(timetable, directTrips(timetable, "C", "A", "07:00", 10)));
+	}
+
+	@Test
+	void directTripsOnlyIncludeServicesRunningOnTheDate() {
+		Timetable timetable = line()
+				.service("SUN", DAY.plusDays(5))
+				.trip("WEEKDAY", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("SUNDAY", "R1", "SUN", "A 09:00", "C 09:30")
+				.trip("NO-CALENDAR", "R1", "NONE", "A 10:00", "C 10:30")
+				.build();
+
+		assertEquals(List.of("WEEKDAY"), tripIds(timetable, ConnectionScanner.directTrips(timetable,
+				timetable.stop("A"), timetable.stop("C"), DAY, 0, 10)));
+		assertEquals(List.of("SUNDAY"), tripIds(timetable, ConnectionScanner.directTrips(timetable,
+				timetable.stop("A"), timetable.stop("C"), DAY.plusDays(5), 0, 10)));
+		assertTrue(ConnectionScanner.directTrips(timetable, timetable.stop("A"), timetable.stop("C"),
+				DAY.plusDays(30), 0, 10).isEmpty());
+	}
+
+	@Test
+	void directTripsMergeTripsOfThePreviousDayPastMidnight() {
+		Timetable timetable = line()
+				.service("NIGHT", DAY.minusDays(1))
+				.trip("N1", "R1", "NIGHT", "A 24:30", "C 25:00")
+				.trip("N2", "R1", "WD", "A 24:35", "C 25:05")
+				.trip("EARLY", "R1", "WD", "A 00:20", "C 00:50")
+				.trip("LATER", "R1", "WD", "A 00:45", "C 01:10")
+				.build();
+
+		List<Journey.Leg> legs = directTrips(timetable, "A", "C", "00:10", 10);
+
+		// N2 belongs to the service day of DAY, so it leaves in the night after DAY and not in this one
+		assertEquals(List.of("EARLY", "N1", "LATER", "N2"), tripIds(timetable, legs));
+		assertEquals(time("00:30"), legs.get(1).departure());
+		assertEquals(time("01:00"), legs.get(1).arrival());
+		assertEquals(time("24:35"), legs.get(3).departure());
+		assertEquals(List.of("N2"), tripIds(timetable, ConnectionScanner.directTrips(timetable,
+				timetable.stop("A"), timetable.stop("C"), DAY.plusDays(1), time("00:10"), 10)));
+	}
+
+	@Test
+	void dropsRowsWithUnknownKeys() {
+		Timetable timetable = line()
+				.trip("OK", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("NO-ROUTE", "R9", "WD", "A 09:00", "C 09:30")
+				.trip("GAP", "R1", "WD", "A 10:00", "X 10:10", "C 10:30")
+				.stopTimes("GHOST", "A 11:00", "C 11:30")
+				.build();
+
+		assertEquals(-1, timetable.trip("NO-ROUTE"));
+		assertEquals(-1, timetable.trip("GHOST"));
+		assertEquals(-1, timetable.stop("X"));
+		assertEquals(2, timetable.connectionCount());
+		assertEquals(List.of("OK", "GAP"), tripIds(timetable, directTrips(timetable, "A", "C", "07:00", 10)));
+	}
+
+	// Stops A, B and C on one route, with service WD running on DAY
+	private TimetableFixture line() {
+		return new TimetableFixture()
+				.stop("A", 52.00, 21.00)
+				.stop("B", 52.01, 21.00)
+				.stop("C", 52.02, 21.00)
+				.route("R1")
+				.service("WD", DAY);
+	}
+
+	private List<Journey.Leg> directTrips(Timetable timetable, String from, String to, String time, int limit) {
+		return ConnectionScanner.directTrips(timetable, timetable.stop(from), timetable.stop(to), DAY, time(time),
+				limit);
+	}
+
+	private List<String> tripIds(Timetable timetable, List<Journey.Leg> legs) {
+		return legs.stream().map(leg -> timetable.tripIds[leg.trip()]).toList();
+	}
+}
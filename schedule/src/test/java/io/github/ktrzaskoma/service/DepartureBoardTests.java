@@ -0,0 +1,89 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static io.github.ktrzaskoma.service.TimetableFixture.DAY;
+import static io.github.ktrzaskoma.service.TimetableFixture.time;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DepartureBoardTests {
+
+	@Test
+	void nextStartsAtTheFirstDepartureAtOrAfterTheTime() {
+		Timetable timetable = line()
+				.trip("T1", "R1", "WD", "A 07:00", "B 07:10", "C 07:20")
+				.trip("T2", "R1", "WD", "A 07:30", "B 07:40", "C 07:50")
+				.trip("T3", "R1", "WD", "A 08:00", "B 08:10", "C 08:20")
+				.trip("T4", "R1", "WD", "A 08:30", "B 08:40", "C 08:50")
+				.trip("T5", "R1", "WD", "A 09:00", "B 09:10", "C 09:20")
+				.build();
+
+		assertEquals(List.of("T3", "T4", "T5"), tripIds(timetable, next(timetable, "A", "08:00", 10)));
+		assertEquals(List.of("T3", "T4"), tripIds(timetable, next(timetable, "A", "07:31", 2)));
+		assertEquals(List.of("T1", "T2"), tripIds(timetable, next(timetable, "B", "00:00", 2)));
+		assertTrue(next(timetable, "A", "09:01", 10).isEmpty());
+		// Trips end at C, nothing leaves from there
+		assertTrue(next(timetable, "C", "00:00", 10).isEmpty());
+
+		List<DepartureBoard.Departure> departures = next(timetable, "B", "08:05", 1);
+		assertEquals(time("08:10"), departures.get(0).time());
+	}
+
+	@Test
+	void nextOnlyIncludesServicesRunningOnTheDate() {
+		Timetable timetable = line()
+				.service("SUN", DAY.plusDays(5))
+				.trip("WEEKDAY", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("SUNDAY", "R1", "SUN", "A 08:15", "C 08:45")
+				.trip("LATER", "R1", "WD", "A 08:30", "C 09:00")
+				.build();
+
+		assertEquals(List.of("WEEKDAY", "LATER"), tripIds(timetable, next(timetable, "A", "07:00", 10)));
+		assertEquals(List.of("SUNDAY"), tripIds(timetable,
+				DepartureBoard.next(timetable, timetable.stop("A"), DAY.plusDays(5), time("07:00"), 10)));
+		assertTrue(DepartureBoard.next(timetable, timetable.stop("A"), DAY.plusDays(30), time("07:00"), 10)
+				.isEmpty());
+	}
+
+	@Test
+	void nextMergesDeparturesOfThePreviousDayPastMidnight() {
+		Timetable timetable = line()
+				.service("NIGHT", DAY.minusDays(1))
+				.trip("N1", "R1", "NIGHT", "A 24:20", "C 24:50")
+				.trip("N2", "R1", "NIGHT", "A 25:10", "C 25:40")
+				.trip("EARLY", "R1", "WD", "A 00:05", "C 00:35")
+				.trip("MIDDLE", "R1", "WD", "A 00:40", "C 01:10")
+				.trip("LATE", "R1", "WD", "A 24:30", "C 25:00")
+				.build();
+
+		List<DepartureBoard.Departure> departures = next(timetable, "A", "00:00", 10);
+
+		// LATE runs on the service day of DAY, so it leaves in the night after DAY
+		assertEquals(List.of("EARLY", "N1", "MIDDLE", "N2", "LATE"), tripIds(timetable, departures));
+		assertEquals(List.of(time("00:05"), time("00:20"), time("00:40"), time("01:10"), time("24:30")),
+				departures.stream().map(DepartureBoard.Departure::time).toList());
+		assertEquals(List.of("N2", "LATE"), tripIds(timetable, next(timetable, "A", "00:41", 10)));
+		assertEquals(List.of("EARLY", "N1"), tripIds(timetable, next(timetable, "A", "00:00", 2)));
+	}
+
+	// Stops A, B and C on one route, with service WD running on DAY
+	private TimetableFixture line() {
+		return new TimetableFixture()
+				.stop("A", 52.00, 21.00)
+				.stop("B", 52.01, 21.00)
+				.stop("C", 52.02, 21.00)
+				.route("R1")
+				.service("WD", DAY);
+	}
+
+	private List<DepartureBoard.Departure> next(Timetable timetable, String stopId, String time, int limit) {
+		return DepartureBoard.next(timetable, timetable.stop(stopId), DAY, time(time), limit);
+	}
+
+	private List<String> tripIds(Timetable timetable, List<DepartureBoard.Departure> departures) {
+		return departures.stream().map(departure -> timetable.tripIds[departure.trip()]).toList();
+	}
+}
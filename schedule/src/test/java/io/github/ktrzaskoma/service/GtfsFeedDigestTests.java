@@ -0,0 +1,69 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class GtfsFeedDigestTests {
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void hashesOnlyTopLevelGtfsFiles() throws IOException {
+		Map<String, String> entries = new LinkedHashMap<>();
+		entries.put("stops.txt", "stop_id\nS1\n");
+		entries.put("trips.txt", "trip_id\nT1\n");
+		entries.put("__MACOSX/._stops.txt", "resource fork");
+		entries.put("docs/notes.txt", "not part of the feed");
+		entries.put("README.md", "readme");
+
+		try (ZipFile zip = zip("feed.zip", entries)) {
+			assertEquals(List.of("stops.txt", "trips.txt"),
+					List.copyOf(GtfsFeedDigest.entryHashes(zip).keySet()));
+		}
+	}
+
+	@Test
+	void contentHashIgnoresEntriesOutsideTheFeed() throws IOException {
+		Map<String, String> plain = new LinkedHashMap<>();
+		plain.put("stops.txt", "stop_id\nS1\n");
+		Map<String, String> repacked = new LinkedHashMap<>(plain);
+		repacked.put("__MACOSX/._stops.txt", "resource fork");
+		Map<String, String> changed = new LinkedHashMap<>();
+		changed.put("stops.txt", "stop_id\nS2\n");
+
+		try (ZipFile first = zip("plain.zip", plain); ZipFile second = zip("repacked.zip", repacked);
+			 ZipFile third = zip("changed.zip", changed)) {
+			String hash = GtfsFeedDigest.contentHash(GtfsFeedDigest.entryHashes(first));
+			assertEquals(hash, GtfsFeedDigest.contentHash(GtfsFeedDigest.entryHashes(second)));
+			assertNotEquals(hash, GtfsFeedDigest.contentHash(GtfsFeedDigest.entryHashes(third)));
+		}
+	}
+
+	private ZipFile zip(String name, Map<String, String> entries) throws IOException {
+		Path file = directory.resolve(name);
+		try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey()));
+				zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+				zip.closeEntry();
+			}
+		}
+		return new ZipFile(file.toFile());
+	}
+}
@@ -0,0 +1,142 @@
+package io.github.ktrzaskoma.service;
+
+import com.opencsv.CSVParser;
+import io.github.ktrzaskoma.model.StopTime;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Compares the cost per stop_times row of the GTFS reader with the opencsv based parsing it replaced.
+// Both paths read the same generated file and have to agree on every parsed value. Run with -Pbenchmark.
+@Tag("benchmark")
+@Slf4j
+class GtfsReaderBenchmarkTests {
+
+	private static final int ROWS = 200_000;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+
+	@Test
+	void stopTimesRowCost() throws IOException {
+		String file = generateStopTimes();
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			assertEquals(parseWithOpenCsv(file), parseWithGtfsReader(file));
+		}
+
+		Measurement openCsv = measure(() -> parseWithOpenCsv(file));
+		Measurement gtfsReader = measure(() -> parseWithGtfsReader(file));
+
+		log.info(String.format("stop_times.txt, %d rows: opencsv %.0f ns/row %.0f B/row, gtfs reader %.0f ns/row %.0f B/row",
+				ROWS, openCsv.nanosPerRow(), openCsv.bytesPerRow(), gtfsReader.nanosPerRow(), gtfsReader.bytesPerRow()));
+	}
+
+	private long parseWithGtfsReader(String file) throws IOException {
+		long checksum = 0;
+		try (GtfsReader reader = new GtfsReader(new StringReader(file))) {
+			GtfsCsv.StopTimeColumns columns = GtfsCsv.StopTimeColumns.of(reader);
+			while (reader.next()) {
+				String tripId = columns.tripId(reader);
+				String stopId = columns.stopId(reader);
+				StopTime stopTime = columns.read(reader);
+				checksum += checksum(tripId, stopId, stopTime.getStopSequence(), stopTime.getArrivalTime(),
+						stopTime.getDepartureTime());
+			}
+		}
+		return checksum;
+	}
+
+	// The import path before the GTFS reader: opencsv tokens, header lookups by name and split based times
+	private long parseWithOpenCsv(String file) throws IOException {
+		long checksum = 0;
+		try (BufferedReader reader = new BufferedReader(new StringReader(file))) {
+			CSVParser parser = new CSVParser();
+			Map<String, Integer> headerMap = createHeaderMap(parser.parseLine(reader.readLine()));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = parser.parseLine(line);
+				checksum += checksum(getFieldValue(fields, headerMap, "trip_id"),
+						getFieldValue(fields, headerMap, "stop_id"),
+						Integer.parseInt(getFieldValue(fields, headerMap, "stop_sequence")),
+						parseTime(getFieldValue(fields, headerMap, "arrival_time")),
+						parseTime(getFieldValue(fields, headerMap, "departure_time")));
+			}
+		}
+		return checksum;
+	}
+
+	private long checksum(String tripId, String stopId, int stopSequence, int arrival, int departure) {
+		return tripId.hashCode() * 31L + stopId.hashCode() + stopSequence + arrival * 7L + departure;
+	}
+
+	private Map<String, Integer> createHeaderMap(String[] headers) {
+		Map<String, Integer> headerMap = new HashMap<>();
+		for (int i = 0; i < headers.length; i++) {
+			headerMap.put(headers[i].trim().toLowerCase(), i);
+		}
+		return headerMap;
+	}
+
+	private String getFieldValue(String[] line, Map<String, Integer> headerMap, String fieldName) {
+		Integer index = headerMap.get(fieldName.toLowerCase());
+		if (index != null && index < line.length && line[index] != null && !line[index].trim().isEmpty()) {
+			return line[index].trim();
+		}
+		throw new IllegalArgumentException("Required field missing: " + fieldName);
+	}
+
+	// Seconds of the service day, as they are stored now, instead of the LocalTime that wrapped at 24:00
+	private int parseTime(String timeStr) {
+		String[] parts = timeStr.split(":");
+		int hours = Integer.parseInt(parts[0]);
+		return (hours * 60 + Integer.parseInt(parts[1])) * 60 + (parts.length > 2 ? Integer.parseInt(parts[2]) : 0);
+	}
+
+	private String generateStopTimes() {
+		StringBuilder file = new StringBuilder("trip_id,arrival_time,departure_time,stop_id,stop_sequence,stop_headsign\n");
+		int tripLength = 20;
+		for (int row = 0; row < ROWS; row++) {
+			int trip = row / tripLength;
+			int sequence = row % tripLength + 1;
+			int seconds = 4 * 3600 + trip * 97 % (22 * 3600) + sequence * 150;
+			String time = String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+			file.append("T").append(trip).append(',')
+					.append(time).append(',').append(time).append(',')
+					.append("S").append((trip * 7 + sequence) % 400).append(',')
+					.append(sequence).append(',')
+					.append(sequence % 5 == 0 ? "\"Warszawa, Śródmieście\"" : "").append('\n');
+		}
+		return file.toString();
+	}
+
+	private Measurement measure(ParseRun run) throws IOException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			run.parse();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		long rows = (long) ROWS * MEASURED_ROUNDS;
+		return new Measurement((double) elapsed / rows, (double) allocated / rows);
+	}
+
+	@FunctionalInterface
+	private interface ParseRun {
+		long parse() throws IOException;
+	}
+
+	private record Measurement(double nanosPerRow, double bytesPerRow) {
+	}
+}
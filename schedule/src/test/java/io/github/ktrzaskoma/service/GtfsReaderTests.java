@@ -0,0 +1,122 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GtfsReaderTests {
+
+	@Test
+	void readsQuotedFieldsWithCommasAndDoubledQuotes() throws IOException {
+		try (GtfsReader reader = reader("stop_id,stop_name\nS1,\"Warszawa, \"\"Centralna\"\"\"\n")) {
+			assertTrue(reader.next());
+			assertEquals("S1", reader.required(reader.column("stop_id"), "stop_id"));
+			assertEquals("Warszawa, \"Centralna\"", reader.required(reader.column("stop_name"), "stop_name"));
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	void keepsNewlinesInsideQuotesAndCountsTheirLines() throws IOException {
+		try (GtfsReader reader = reader("stop_id,stop_name\nS1,\"Line one\nLine two\"\nS2,Plain\n")) {
+			assertTrue(reader.next());
+			assertEquals("Line one\nLine two", reader.required(reader.column("stop_name"), "stop_name"));
+			assertTrue(reader.next());
+			assertEquals("S2", reader.required(reader.column("stop_id"), "stop_id"));
+			assertEquals(4, reader.getLineNumber());
+		}
+	}
+
+	@Test
+	void skipsByteOrderMarkAndHandlesCrlf() throws IOException {
+		try (GtfsReader reader = reader("\uFEFFStop_Id,stop_name\r\nS1,First\r\n\r\nS2,Second\r\n")) {
+			int stopId = reader.column("stop_id");
+			int stopName = reader.column("stop_name");
+			assertEquals(0, stopId);
+
+			assertTrue(reader.next());
+			assertEquals("S1", reader.required(stopId, "stop_id"));
+			assertEquals("First", reader.required(stopName, "stop_name"));
+			assertTrue(reader.next());
+			assertEquals("S2", reader.required(stopId, "stop_id"));
+			assertEquals("Second", reader.required(stopName, "stop_name"));
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	void trimsUnquotedFieldsAndTreatsMissingColumnsAsAbsent() throws IOException {
+		try (GtfsReader reader = reader("stop_id,stop_name,wheelchair_boarding\n S1 ,Name\n")) {
+			assertTrue(reader.next());
+			assertEquals("S1", reader.required(reader.column("stop_id"), "stop_id"));
+			assertFalse(reader.isPresent(reader.column("wheelchair_boarding")));
+			assertEquals(0, reader.integer(reader.column("wheelchair_boarding"), 0));
+			assertEquals(-1, reader.column("parent_station"));
+			assertThrows(IllegalArgumentException.class,
+					() -> reader.required(reader.column("wheelchair_boarding"), "wheelchair_boarding"));
+		}
+	}
+
+	@Test
+	void parsesServiceDayTimes() throws IOException {
+		try (GtfsReader reader = reader("time\n08:05:09\n7:30\n25:10:00\n0:00:00\n")) {
+			int time = reader.column("time");
+			assertTrue(reader.next());
+			assertEquals(8 * 3600 + 5 * 60 + 9, reader.seconds(time, "time"));
+			assertTrue(reader.next());
+			assertEquals(7 * 3600 + 30 * 60, reader.seconds(time, "time"));
+			assertTrue(reader.next());
+			assertEquals(25 * 3600 + 10 * 60, reader.seconds(time, "time"));
+			assertTrue(reader.next());
+			assertEquals(0, reader.seconds(time, "time"));
+		}
+	}
+
+	@Test
+	void rejectsMalformedTimes() throws IOException {
+		try (GtfsReader reader = reader("time\n8\n08:60:00\n08:00:00:00\n8:0a:00\n")) {
+			int time = reader.column("time");
+			while (reader.next()) {
+				assertThrows(IllegalArgumentException.class, () -> reader.seconds(time, "time"));
+			}
+		}
+	}
+
+	@Test
+	void parsesDatesAndLenientIntegers() throws IOException {
+		try (GtfsReader reader = reader("date,value\n20261020,-3\n2026102,x\n")) {
+			int date = reader.column("date");
+			int value = reader.column("value");
+			assertTrue(reader.next());
+			assertEquals(LocalDate.of(2026, 10, 20), reader.date(date, "date"));
+			assertEquals(-3, reader.integer(value));
+			assertTrue(reader.next());
+			assertThrows(IllegalArgumentException.class, () -> reader.date(date, "date"));
+			assertNull(reader.integer(value));
+		}
+	}
+
+	@Test
+	void returnsTheSameInstanceForRepeatedIds() throws IOException {
+		try (GtfsReader reader = reader("trip_id\nT1\nT1\n")) {
+			int tripId = reader.column("trip_id");
+			assertTrue(reader.next());
+			String first = reader.requiredId(tripId, "trip_id");
+			assertTrue(reader.next());
+			assertSame(first, reader.requiredId(tripId, "trip_id"));
+		}
+	}
+
+	private GtfsReader reader(String content) throws IOException {
+		return new GtfsReader(new StringReader(content));
+	}
+}
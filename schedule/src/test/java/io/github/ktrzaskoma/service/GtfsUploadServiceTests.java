@@ -0,0 +1,107 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.repository.GtfsUploadRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Activations commit for real here, so the uploads are removed again after every test
+@SpringBootTest
+class GtfsUploadServiceTests {
+
+	@Autowired
+	private GtfsUploadService uploadService;
+
+	@Autowired
+	private GtfsUploadRepository uploadRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final List<Long> uploadIds = new ArrayList<>();
+
+	@AfterEach
+	void tearDown() {
+		uploadRepository.deleteAllById(uploadIds);
+	}
+
+	@Test
+	void activateUploadDeactivatesThePreviousUpload() {
+		GtfsUpload previous = persistReady(true);
+		GtfsUpload next = persistReady(false);
+
+		uploadService.activateUpload(next.getId());
+
+		assertEquals(List.of(next.getId()), activeUploadIds());
+		assertEquals(false, uploadRepository.findById(previous.getId()).orElseThrow().getIsActive());
+	}
+
+	@Test
+	void concurrentActivationsLeaveOneUploadActive() throws Exception {
+		persistReady(true);
+		GtfsUpload first = persistReady(false);
+		GtfsUpload second = persistReady(false);
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		CountDownLatch firstActivated = new CountDownLatch(1);
+		CountDownLatch commitFirst = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			// The first activation holds its transaction open until the second one has started
+			Future<?> firstActivation = executor.submit(() -> transaction.executeWithoutResult(status -> {
+				uploadService.activateUpload(first.getId());
+				firstActivated.countDown();
+				try {
+					commitFirst.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+			assertTrue(firstActivated.await(10, TimeUnit.SECONDS));
+			Future<?> secondActivation = executor.submit(() -> uploadService.activateUpload(second.getId()));
+
+			assertThrows(TimeoutException.class, () -> secondActivation.get(300, TimeUnit.MILLISECONDS));
+			commitFirst.countDown();
+			firstActivation.get(10, TimeUnit.SECONDS);
+			secondActivation.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(List.of(second.getId()), activeUploadIds());
+	}
+
+	private GtfsUpload persistReady(boolean active) {
+		GtfsUpload upload = uploadRepository.save(GtfsUpload.builder()
+				.filename("upload-" + uploadIds.size() + ".zip")
+				.isActive(active)
+				.status(GtfsUpload.UploadStatus.READY)
+				.build());
+		uploadIds.add(upload.getId());
+		return upload;
+	}
+
+	private List<Long> activeUploadIds() {
+		return uploadRepository.findAllById(uploadIds).stream()
+				.filter(upload -> Boolean.TRUE.equals(upload.getIsActive()))
+				.map(GtfsUpload::getId)
+				.toList();
+	}
+}
@@ -0,0 +1,221 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static io.github.ktrzaskoma.service.TimetableFixture.DAY;
+import static io.github.ktrzaskoma.service.TimetableFixture.time;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RaptorPlannerTests {
+
+	@Test
+	void planReturnsTheFasterJourneyWithATransferAndTheSlowerDirectOne() {
+		Timetable timetable = network()
+				.trip("DIRECT", "R1", "WD", "A 08:00", "C 10:00")
+				.trip("T1", "R2", "WD", "A 08:05", "B 08:20")
+				.trip("T2", "R3", "WD", "B 08:30", "C 09:00")
+				.build();
+
+		List<Journey> journeys = plan(timetable, "A", "C", "07:55", 2);
+
+		assertEquals(2, journeys.size());
+		assertJourney(journeys.get(0), "08:05", "09:00", 1);
+		assertEquals(List.of("T1", "T2"), tripIds(timetable, journeys.get(0)));
+		assertEquals(time("08:30"), journeys.get(0).legs().get(1).departure());
+		assertJourney(journeys.get(1), "08:00", "10:00", 0);
+		assertEquals(List.of("DIRECT"), tripIds(timetable, journeys.get(1)));
+	}
+
+	@Test
+	void planKeepsTheMinimumTransferTimeOfTheStop() {
+		TimetableFixture fixture = network()
+				.trip("DIRECT", "R1", "WD", "A 08:00", "C 10:00")
+				.trip("T1", "R2", "WD", "A 08:05", "B 08:20")
+				.trip("T2", "R3", "WD", "B 08:30", "C 09:00");
+
+		// Ten minutes are just enough for the change at B, fifteen are not
+		assertEquals(2, plan(fixture.build(600), "A", "C", "07:55", 2).size());
+		Timetable timetable = fixture.transfer("B", "B", 2, 900).build();
+		List<Journey> journeys = plan(timetable, "A", "C", "07:55", 2);
+
+		assertEquals(1, journeys.size());
+		assertEquals(List.of("DIRECT"), tripIds(timetable, journeys.get(0)));
+	}
+
+	@Test
+	void planWalksFootpathsOfTransfersTxt() {
+		Timetable timetable = walk().transfer("B", "B2", 2, 300).build();
+
+		List<Journey> journeys = plan(timetable, "A", "C", "07:55", 2);
+
+		assertEquals(1, journeys.size());
+		assertJourney(journeys.get(0), "08:05", "09:00", 1);
+		List<Journey.Leg> legs = journeys.get(0).legs();
+		assertEquals(3, legs.size());
+		assertTrue(legs.get(1).isWalk());
+		assertEquals(time("08:20"), legs.get(1).departure());
+		assertEquals(time("08:25"), legs.get(1).arrival());
+	}
+
+	@Test
+	void planMissesTheConnectionWhenTheFootpathTakesTooLong() {
+		Timetable timetable = walk().transfer("B", "B2", 2, 900).build();
+
+		assertTrue(plan(timetable, "A", "C", "07:55", 2).isEmpty());
+	}
+
+	@Test
+	void planEstimatesFootpathsWithoutMinimumTransferTimeFromTheDistance() {
+		Timetable timetable = walk().transfer("B", "B2", 2, -1).build();
+
+		List<Journey> journeys = plan(timetable, "A", "C", "07:55", 2);
+
+		// B2 is about 120 m from B, at walking speed that is 100 s
+		assertEquals(1, journeys.size());
+		Journey.Leg walk = journeys.get(0).legs().get(1);
+		assertTrue(walk.isWalk());
+		int duration = walk.arrival() - walk.departure();
+		assertTrue(duration >= 95 && duration <= 105, "walk of " + duration + " s");
+	}
+
+	@Test
+	void planLimitsTheNumberOfTransfers() {
+		Timetable withDirect = network()
+				.trip("DIRECT", "R1", "WD", "A 08:00", "C 10:00")
+				.trip("T1", "R2", "WD", "A 08:05", "B 08:20")
+				.trip("T2", "R3", "WD", "B 08:30", "C 09:00")
+				.build();
+		Timetable withoutDirect = network()
+				.trip("T1", "R2", "WD", "A 08:05", "B 08:20")
+				.trip("T2", "R3", "WD", "B 08:30", "C 09:00")
+				.build();
+
+		List<Journey> direct = plan(withDirect, "A", "C", "07:55", 0);
+		assertEquals(1, direct.size());
+		assertJourney(direct.get(0), "08:00", "10:00", 0);
+		assertTrue(plan(withoutDirect, "A", "C", "07:55", 0).isEmpty());
+		assertEquals(1, plan(withoutDirect, "A", "C", "07:55", 1).size());
+	}
+
+	@Test
+	void planBoardsTripsOfThePreviousDayAfterMidnight() {
+		Timetable timetable = network()
+				.service("NIGHT", DAY.minusDays(1))
+				.trip("N1", "R1", "NIGHT", "A 24:30", "B 24:50")
+				.trip("T1", "R2", "WD", "B 01:00", "C 01:30")
+				.build();
+
+		List<Journey> journeys = plan(timetable, "A", "C", "00:10", 2);
+
+		assertEquals(1, journeys.size());
+		assertJourney(journeys.get(0), "00:30", "01:30", 1);
+		assertEquals(List.of("N1", "T1"), tripIds(timetable, journeys.get(0)));
+		// The evening before DAY + 1 has no night trip
+		assertTrue(RaptorPlanner.plan(timetable, timetable.stop("A"), timetable.stop("B"), DAY.plusDays(1),
+				time("00:10"), 2).isEmpty());
+	}
+
+	@Test
+	void profileIncludesDeparturesAtBothEndsOfTheWindow() {
+		Timetable timetable = network()
+				.trip("BEFORE", "R1", "WD", "A 07:59", "C 08:29")
+				.trip("START", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("MIDDLE", "R1", "WD", "A 08:30", "C 09:00")
+				.trip("END", "R1", "WD", "A 09:00", "C 09:30")
+				.trip("AFTER", "R1", "WD", "A 09:01", "C 09:31")
+				.build();
+
+		List<Journey> journeys = profile(timetable, "A", "C", "08:00", "09:00");
+
+		assertEquals(List.of("START", "MIDDLE", "END"), journeys.stream()
+				.map(journey -> tripIds(timetable, journey).get(0))
+				.toList());
+	}
+
+	@Test
+	void profileDropsJourneysThatALaterDepartureBeats() {
+		Timetable timetable = network()
+				.trip("SLOW", "R1", "WD", "A 08:00", "C 09:30")
+				.trip("FAST", "R1", "WD", "A 08:10", "C 09:00")
+				.trip("T1", "R2", "WD", "A 07:55", "B 08:20")
+				.trip("T2", "R3", "WD", "B 08:30", "C 08:50")
+				.build();
+
+		List<Journey> journeys = profile(timetable, "A", "C", "07:45", "08:30");
+
+		// The run for 08:10 leaves its labels behind, the earlier runs only add what improves on them. SLOW leaves
+		// before FAST and arrives after it, the change at B leaves even earlier but arrives first.
+		assertEquals(2, journeys.size());
+		assertJourney(journeys.get(0), "07:55", "08:50", 1);
+		assertEquals(List.of("T1", "T2"), tripIds(timetable, journeys.get(0)));
+		assertJourney(journeys.get(1), "08:10", "09:00", 0);
+		assertEquals(List.of("FAST"), tripIds(timetable, journeys.get(1)));
+	}
+
+	@Test
+	void profileStartsTheWalkToTheFirstStopJustInTime() {
+		Timetable timetable = network()
+				.stop("A0", 52.00, 20.99)
+				.transfer("A0", "A", 2, 300)
+				.trip("EARLY", "R1", "WD", "A 08:03", "C 08:33")
+				.trip("T1", "R1", "WD", "A 08:30", "C 09:00")
+				.build();
+
+		List<Journey> journeys = profile(timetable, "A0", "C", "08:00", "09:00");
+
+		// Reaching EARLY would mean leaving A0 at 07:58, before the window
+		assertEquals(1, journeys.size());
+		assertJourney(journeys.get(0), "08:25", "09:00", 0);
+		Journey.Leg walk = journeys.get(0).legs().get(0);
+		assertTrue(walk.isWalk());
+		assertEquals(time("08:25"), walk.departure());
+		assertEquals(time("08:30"), walk.arrival());
+		assertEquals(List.of("T1"), tripIds(timetable, journeys.get(0)));
+	}
+
+	// Stops A, B and C with B2 about 120 m east of B, service WD runs on DAY
+	private TimetableFixture network() {
+		return new TimetableFixture()
+				.stop("A", 52.00, 21.00)
+				.stop("B", 52.01, 21.00)
+				.stop("B2", 52.01, 21.00175)
+				.stop("C", 52.02, 21.00)
+				.route("R1")
+				.route("R2")
+				.route("R3")
+				.service("WD", DAY);
+	}
+
+	// A change from B to B2 on foot, from T1 arriving at 08:20 to T2 leaving at 08:30
+	private TimetableFixture walk() {
+		return network()
+				.trip("T1", "R2", "WD", "A 08:05", "B 08:20")
+				.trip("T2", "R3", "WD", "B2 08:30", "C 09:00");
+	}
+
+	private List<Journey> plan(Timetable timetable, String from, String to, String time, int maxTransfers) {
+		return RaptorPlanner.plan(timetable, timetable.stop(from), timetable.stop(to), DAY, time(time),
+				maxTransfers);
+	}
+
+	private List<Journey> profile(Timetable timetable, String from, String to, String startTime, String endTime) {
+		return RaptorPlanner.profile(timetable, timetable.stop(from), timetable.stop(to), DAY, time(startTime),
+				time(endTime), 2);
+	}
+
+	private void assertJourney(Journey journey, String departure, String arrival, int transfers) {
+		assertEquals(time(departure), journey.departure());
+		assertEquals(time(arrival), journey.arrival());
+		assertEquals(transfers, journey.transfers());
+	}
+
+	private List<String> tripIds(Timetable timetable, Journey journey) {
+		return journey.legs().stream()
+				.filter(leg -> !leg.isWalk())
+				.map(leg -> timetable.tripIds[leg.trip()])
+				.toList();
+	}
+}
@@ -0,0 +1,186 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.event.UploadActivatedEvent;
+import io.github.ktrzaskoma.model.Agency;
+import io.github.ktrzaskoma.model.CalendarDate;
+import io.github.ktrzaskoma.model.GtfsUpload;
+import io.github.ktrzaskoma.model.GtfsUploadVersion;
+import io.github.ktrzaskoma.model.Route;
+import io.github.ktrzaskoma.model.Stop;
+import io.github.ktrzaskoma.model.StopTime;
+import io.github.ktrzaskoma.model.Trip;
+import io.github.ktrzaskoma.model.WeeklyCalendar;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+// Covers the database path of findConnections, which answers while the in-memory timetable is not built yet
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class ScheduleServiceTests {
+
+	private static final LocalDate TRAVEL_DATE = LocalDate.of(2026, 10, 20);
+
+	@Autowired
+	private ScheduleService scheduleService;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private ServiceCalendarService serviceCalendarService;
+
+	@MockitoBean
+	private TimetableService timetableService;
+
+	@BeforeEach
+	void setUp() {
+		when(timetableService.current()).thenReturn(Optional.empty());
+
+		GtfsUpload upload = persist(GtfsUpload.builder()
+				.filename("test.zip")
+				.isActive(true)
+				.status(GtfsUpload.UploadStatus.READY)
+				.build());
+		persist(GtfsUploadVersion.builder().upload(upload).versionId(upload.getId()).build());
+
+		Agency agency = persist(Agency.builder().agencyId("WKD").agencyName("WKD").upload(upload).build());
+		Route route = persist(Route.builder().routeId("A1").routeShortName("A1").routeLongName("Warszawa - Grodzisk")
+				.routeType(2).agency(agency).upload(upload).build());
+		Stop warszawa = persistStop(upload, "WSR", "Warszawa Śródmieście WKD");
+		Stop komorow = persistStop(upload, "KOM", "Komorów");
+		Stop grodzisk = persistStop(upload, "GRO", "Grodzisk Maz. Radońska");
+
+		// Ten trips on the travel date, one that only runs the day after, one removed again on the travel date and
+		// a night trip
+		for (int i = 0; i < 10; i++) {
+			Trip trip = persistTrip(upload, route, "T" + i, "WEEKDAY");
+			int departure = seconds(6, 0) + 30 * 60 * i;
+			persistStopTime(upload, trip, warszawa, 1, departure);
+			persistStopTime(upload, trip, komorow, 2, departure + 20 * 60);
+			persistStopTime(upload, trip, grodzisk, 3, departure + 30 * 60);
+		}
+		Trip otherDay = persistTrip(upload, route, "X1", "HOLIDAY");
+		persistStopTime(upload, otherDay, warszawa, 1, seconds(6, 10));
+		persistStopTime(upload, otherDay, grodzisk, 2, seconds(6, 40));
+		Trip removed = persistTrip(upload, route, "R1", "REMOVED");
+		persistStopTime(upload, removed, warszawa, 1, seconds(7, 10));
+		persistStopTime(upload, removed, grodzisk, 2, seconds(7, 40));
+		// Runs after midnight at the end of the travel date's service
+		Trip night = persistTrip(upload, route, "N1", "WEEKDAY");
+		persistStopTime(upload, night, warszawa, 1, seconds(25, 0));
+		persistStopTime(upload, night, grodzisk, 2, seconds(25, 30));
+
+		persist(WeeklyCalendar.builder().serviceId("WEEKDAY").weekdays(0b0011111).startDate(TRAVEL_DATE.minusDays(30))
+				.endDate(TRAVEL_DATE.plusDays(30)).upload(upload).build());
+		persist(CalendarDate.builder().serviceId("HOLIDAY").date(TRAVEL_DATE.plusDays(1)).exceptionType(1)
+				.upload(upload).build());
+		persist(WeeklyCalendar.builder().serviceId("REMOVED").weekdays(0b1111111).startDate(TRAVEL_DATE)
+				.endDate(TRAVEL_DATE.plusDays(30)).upload(upload).build());
+		persist(CalendarDate.builder().serviceId("REMOVED").date(TRAVEL_DATE).exceptionType(2).upload(upload).build());
+
+		entityManager.flush();
+		serviceCalendarService.compile(upload);
+		serviceCalendarService.onUploadActivated(new UploadActivatedEvent(upload.getId()));
+		entityManager.clear();
+	}
+
+	@Test
+	void findConnectionsIsASingleStatement() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		List<ConnectionDto> connections = scheduleService.findConnections("WSR", "GRO", TRAVEL_DATE, LocalTime.of(7, 0));
+
+		// Including the trips of the day before that leave after midnight
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(List.of("T2", "T3", "T4", "T5", "T6"), connections.stream().map(ConnectionDto::getTripId).toList());
+		ConnectionDto first = connections.get(0);
+		assertEquals("Warszawa Śródmieście WKD", first.getFromStopName());
+		assertEquals("Grodzisk Maz. Radońska", first.getToStopName());
+		assertEquals(LocalTime.of(7, 0), first.getDepartureTime());
+		assertEquals(LocalTime.of(7, 30), first.getArrivalTime());
+	}
+
+	@Test
+	void findConnectionsAnswersFromTheCacheWithinATimeBucket() {
+		scheduleService.findConnections("WSR", "GRO", TRAVEL_DATE, LocalTime.of(8, 0));
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		List<ConnectionDto> connections = scheduleService.findConnections("WSR", "GRO", TRAVEL_DATE, LocalTime.of(8, 3));
+
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertEquals(List.of("T5", "T6", "T7", "T8", "T9"), connections.stream().map(ConnectionDto::getTripId).toList());
+	}
+
+	@Test
+	void findConnectionsOrdersTripsPastMidnightLast() {
+		List<ConnectionDto> connections = scheduleService.findConnections("WSR", "GRO", TRAVEL_DATE, LocalTime.of(10, 0));
+
+		assertEquals(List.of("T8", "T9", "N1"), connections.stream().map(ConnectionDto::getTripId).toList());
+		assertEquals(LocalTime.of(1, 0), connections.get(2).getDepartureTime());
+	}
+
+	@Test
+	void findConnectionsMergesTripsOfThePreviousDayPastMidnight() {
+		List<ConnectionDto> connections = scheduleService.findConnections("WSR", "GRO", TRAVEL_DATE, LocalTime.of(0, 30));
+
+		// N1 of the day before leaves at 01:00 of the travel date
+		assertEquals(List.of("N1", "T0", "T1", "T2", "T3"), connections.stream().map(ConnectionDto::getTripId).toList());
+		assertEquals(LocalTime.of(1, 0), connections.get(0).getDepartureTime());
+		assertEquals(LocalTime.of(1, 30), connections.get(0).getArrivalTime());
+		// On the Monday before the travel date there is no N1 of the Sunday, WEEKDAY does not run on Sundays
+		assertEquals(List.of("T0", "T1", "T2", "T3", "T4"), scheduleService.findConnections("WSR", "GRO",
+				TRAVEL_DATE.minusDays(1), LocalTime.of(0, 30)).stream().map(ConnectionDto::getTripId).toList());
+	}
+
+	@Test
+	void findConnectionsIgnoresTheReverseDirection() {
+		assertEquals(List.of(), scheduleService.findConnections("GRO", "WSR", TRAVEL_DATE, LocalTime.of(6, 0)));
+	}
+
+	private Stop persistStop(GtfsUpload upload, String stopId, String stopName) {
+		return persist(Stop.builder().stopId(stopId).stopName(stopName).stopLat(BigDecimal.valueOf(52.2))
+				.stopLon(BigDecimal.valueOf(20.8)).upload(upload).build());
+	}
+
+	private Trip persistTrip(GtfsUpload upload, Route route, String tripId, String serviceId) {
+		return persist(Trip.builder().tripId(tripId).route(route).serviceId(serviceId).wheelchairAccessible(1)
+				.bikesAllowed(1).upload(upload).build());
+	}
+
+	private void persistStopTime(GtfsUpload upload, Trip trip, Stop stop, int stopSequence, int time) {
+		persist(StopTime.builder().trip(trip).stop(stop).stopSequence(stopSequence).arrivalTime(time)
+				.departureTime(time).upload(upload).build());
+	}
+
+	private static int seconds(int hours, int minutes) {
+		return (hours * 60 + minutes) * 60;
+	}
+
+	private <T> T persist(T entity) {
+		entityManager.persist(entity);
+		return entity;
+	}
+}
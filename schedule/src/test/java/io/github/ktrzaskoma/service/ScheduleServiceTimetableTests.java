@@ -0,0 +1,215 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.controller.ScheduleController;
+import io.github.ktrzaskoma.dto.ConnectionDto;
+import io.github.ktrzaskoma.dto.TripDto;
+import io.github.ktrzaskoma.dto.TripStopDto;
+import io.github.ktrzaskoma.exception.GlobalExceptionHandler;
+import io.github.ktrzaskoma.repository.StopTimeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.github.ktrzaskoma.service.TimetableFixture.DAY;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Covers ScheduleService with the in-memory timetable and the service calendars stubbed, mostly called through the
+// controller so that the status codes of its errors are checked as well
+class ScheduleServiceTimetableTests {
+
+	private TimetableService timetableService;
+
+	private StopTimeRepository stopTimeRepository;
+
+	private ServiceCalendarService serviceCalendarService;
+
+	private ConnectionCache connectionCache;
+
+	private ScheduleService scheduleService;
+
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() {
+		timetableService = mock(TimetableService.class);
+		stopTimeRepository = mock(StopTimeRepository.class);
+		serviceCalendarService = mock(ServiceCalendarService.class);
+		connectionCache = new ConnectionCache(100, Duration.ofMinutes(10), Duration.ofMinutes(5),
+				new SimpleMeterRegistry());
+		scheduleService = new ScheduleService(stopTimeRepository, timetableService, connectionCache,
+				serviceCalendarService);
+		mockMvc = MockMvcBuilders.standaloneSetup(new ScheduleController(scheduleService,
+						mock(StopCatalogueService.class), mock(ConnectionBatchService.class)))
+				.setControllerAdvice(new GlobalExceptionHandler())
+				.build();
+	}
+
+	@Test
+	void findConnectionsInRangeAnswersFromTheTimetable() throws Exception {
+		useTimetable(network()
+				.trip("T1", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("T2", "R1", "WD", "A 08:30", "C 09:00")
+				.build());
+
+		mockMvc.perform(get("/schedule/connections/range").param("fromStopId", "A").param("toStopId", "C")
+						.param("date", DAY.toString()).param("startTime", "08:00").param("endTime", "09:00"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].legs[0].tripId").value(contains("T1", "T2")));
+	}
+
+	@Test
+	void findConnectionsInRangeRejectsAnEndBeforeTheStart() throws Exception {
+		useTimetable(network().build());
+
+		mockMvc.perform(get("/schedule/connections/range").param("fromStopId", "A").param("toStopId", "C")
+						.param("date", DAY.toString()).param("startTime", "09:00").param("endTime", "08:59"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void getDeparturesAnswersFromTheTimetable() throws Exception {
+		useTimetable(network()
+				.trip("T1", "R1", "WD", "A 08:00", "C 08:30")
+				.trip("T2", "R1", "WD", "A 08:30", "C 09:00")
+				.build());
+
+		mockMvc.perform(get("/schedule/stops/A/departures").param("date", DAY.toString()).param("time", "08:10"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].tripId").value(contains("T2")))
+				.andExpect(jsonPath("$[0].headsign").value("C"));
+	}
+
+	@Test
+	void getDeparturesOfAnUnknownStopIsNotFound() throws Exception {
+		useTimetable(network().build());
+
+		mockMvc.perform(get("/schedule/stops/X/departures").param("date", DAY.toString()).param("time", "08:00"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void getDeparturesIsUnavailableUntilTheTimetableIsBuilt() throws Exception {
+		when(timetableService.current()).thenReturn(Optional.empty());
+
+		mockMvc.perform(get("/schedule/stops/A/departures").param("date", DAY.toString()).param("time", "08:00"))
+				.andExpect(status().isServiceUnavailable());
+	}
+
+	@Test
+	void getTripKeepsTheTimesOfEachTripOfASharedPattern() {
+		Timetable timetable = network()
+				.trip("T1", "R1", "WD", "A 08:00", "B 08:10 08:12", "C 08:30")
+				.trip("T2", "R1", "WD", "A 09:00", "B 09:15 09:16", "C 09:40")
+				.build();
+		useTimetable(timetable);
+
+		assertEquals(timetable.tripPatterns[timetable.trip("T1")], timetable.tripPatterns[timetable.trip("T2")]);
+		TripDto trip = scheduleService.getTrip("T2");
+		assertEquals("T2", trip.getTripId());
+		assertEquals("C", trip.getHeadsign());
+		assertEquals(List.of("A", "B", "C"), trip.getStops().stream().map(TripStopDto::getStopId).toList());
+		assertEquals(LocalTime.of(9, 15), trip.getStops().get(1).getArrivalTime());
+		assertEquals(LocalTime.of(9, 16), trip.getStops().get(1).getDepartureTime());
+		assertEquals(LocalTime.of(8, 12), scheduleService.getTrip("T1").getStops().get(1).getDepartureTime());
+	}
+
+	@Test
+	void getTripOfAnOvertakingTripReadsItsOwnPattern() {
+		Timetable timetable = network()
+				.trip("SLOW", "R1", "WD", "A 08:00", "B 08:20", "C 09:00")
+				.trip("FAST", "R1", "WD", "A 08:05", "B 08:15", "C 08:30")
+				.build();
+		useTimetable(timetable);
+
+		// Patterns keep their trips sorted at every stop, so the trips cannot share one
+		assertNotEquals(timetable.tripPatterns[timetable.trip("SLOW")], timetable.tripPatterns[timetable.trip("FAST")]);
+		assertEquals(List.of(LocalTime.of(8, 0), LocalTime.of(8, 20), LocalTime.of(9, 0)),
+				departureTimes(scheduleService.getTrip("SLOW")));
+		assertEquals(List.of(LocalTime.of(8, 5), LocalTime.of(8, 15), LocalTime.of(8, 30)),
+				departureTimes(scheduleService.getTrip("FAST")));
+	}
+
+	@Test
+	void getTripShowsTimesPastMidnightOnTheClock() {
+		useTimetable(network()
+				.trip("NIGHT", "R1", "WD", "A 23:50", "B 24:10", "C 25:05")
+				.build());
+
+		assertEquals(List.of(LocalTime.of(23, 50), LocalTime.of(0, 10), LocalTime.of(1, 5)),
+				departureTimes(scheduleService.getTrip("NIGHT")));
+	}
+
+	@Test
+	void getTripOfAnUnknownTripIsNotFound() throws Exception {
+		useTimetable(network().trip("T1", "R1", "WD", "A 08:00", "C 08:30").build());
+
+		mockMvc.perform(get("/schedule/trips/T1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.stops.length()").value(2));
+		mockMvc.perform(get("/schedule/trips/X"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void findConnectionsKeepsDatabaseAnswersOfThePreviousUploadApart() {
+		when(timetableService.current()).thenReturn(Optional.empty());
+		ServiceCalendars previous = calendars(1);
+		ServiceCalendars activated = calendars(2);
+		when(stopTimeRepository.findConnections(any(), any(), anyInt(), any(), any(), eq(List.of(1L)), any()))
+				.thenReturn(List.of(ConnectionDto.builder().tripId("OLD").departureTime(LocalTime.of(8, 0)).build()));
+		when(stopTimeRepository.findConnections(any(), any(), anyInt(), any(), any(), eq(List.of(2L)), any()))
+				.thenReturn(List.of(ConnectionDto.builder().tripId("NEW").departureTime(LocalTime.of(8, 0)).build()));
+
+		// The cache is invalidated on activation before the calendars of the activated upload are swapped in
+		connectionCache.invalidate();
+		when(serviceCalendarService.current()).thenReturn(previous);
+		assertEquals("OLD", scheduleService.findConnections("A", "C", DAY, LocalTime.of(7, 0)).get(0).getTripId());
+		when(serviceCalendarService.current()).thenReturn(activated);
+
+		assertEquals("NEW", scheduleService.findConnections("A", "C", DAY, LocalTime.of(7, 0)).get(0).getTripId());
+	}
+
+	// Stops A, B and C on route R1, service WD runs on DAY
+	private TimetableFixture network() {
+		return new TimetableFixture()
+				.stop("A", 52.00, 21.00)
+				.stop("B", 52.01, 21.00)
+				.stop("C", 52.02, 21.00)
+				.route("R1")
+				.service("WD", DAY);
+	}
+
+	private List<LocalTime> departureTimes(TripDto trip) {
+		return trip.getStops().stream().map(TripStopDto::getDepartureTime).toList();
+	}
+
+	// Service WD of an upload that is its own version chain, running on DAY
+	private ServiceCalendars calendars(long uploadId) {
+		BitSet days = new BitSet();
+		days.set(0);
+		return new ServiceCalendars(uploadId, List.of(uploadId), Map.of("WD", new ServiceCalendars.Days(DAY, days)));
+	}
+
+	private void useTimetable(Timetable timetable) {
+		when(timetableService.current()).thenReturn(Optional.of(timetable));
+	}
+}
@@ -0,0 +1,65 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StopNameIndexTests {
+
+	private static final String[] NAMES = {
+			"Podkowa Leśna Główna",
+			"Podkowa Leśna Zachodnia",
+			"Grodzisk Maz. Radońska",
+			"Grodzisk Maz. Jordanowice",
+			"Radość Grodziska",
+			"Łódź Kaliska",
+			"Milanówek Grudów",
+			"Nowy Grodzisk"
+	};
+
+	private final StopNameIndex index = new StopNameIndex(NAMES);
+
+	@Test
+	void searchIgnoresCaseAndDiacritics() {
+		assertEquals(List.of(0, 1), index.search("Podkowa Lesna", 10));
+		assertEquals(List.of(0), index.search("podkowa lesna glowna", 10));
+		assertEquals(List.of(0), index.search("PODKOWA LEŚNA GŁ", 10));
+	}
+
+	@Test
+	void searchMatchesEveryWordAsAPrefixOfAWordOfTheName() {
+		assertEquals(List.of(2, 4), index.search("grodzisk rad", 10));
+		assertEquals(List.of(2), index.search("rad maz", 10));
+		assertTrue(index.search("grodzisk podkowa", 10).isEmpty());
+		assertTrue(index.search("odzisk", 10).isEmpty());
+	}
+
+	@Test
+	void foldTurnsTheLetterLIntoAscii() {
+		assertEquals("lodz kaliska", StopNameIndex.fold("Łódź Kaliska"));
+		assertEquals("glowna", StopNameIndex.fold("GŁÓWNA"));
+		assertEquals(List.of(5), index.search("lodz", 10));
+		assertEquals(List.of(5), index.search("ŁÓDŹ", 10));
+		assertEquals(List.of(5), index.search("łódź", 10));
+	}
+
+	@Test
+	void searchRanksWholePrefixThenFirstWordThenLength() {
+		// Names starting with the query by length, then the ones that only contain its words
+		assertEquals(List.of(2, 3, 7, 4), index.search("grodzisk", 10));
+		assertEquals(List.of(2, 3), index.search("grodzisk", 2));
+		// "Radość Grodziska" is shorter, but the first query word starts "Grodzisk Maz. Radońska"
+		assertEquals(List.of(2, 4), index.search("grodzisk ra", 10));
+		assertEquals(List.of(4, 2), index.search("ra grodzisk", 10));
+	}
+
+	@Test
+	void searchWithoutWordsFindsNothing() {
+		assertTrue(index.search("", 10).isEmpty());
+		assertTrue(index.search(" .,- ", 10).isEmpty());
+		assertTrue(index.search(null, 10).isEmpty());
+	}
+}
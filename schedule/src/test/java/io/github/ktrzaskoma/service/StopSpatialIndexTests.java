@@ -0,0 +1,127 @@
+package io.github.ktrzaskoma.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StopSpatialIndexTests {
+
+	// Six stops on one meridian, 0.001 degrees of latitude or about 111 m apart, stop 0 southernmost
+	private static final double[] LINE_LATS = {52.000, 52.003, 52.001, 52.005, 52.002, 52.004};
+	private static final double[] LINE_LONS = {21.0, 21.0, 21.0, 21.0, 21.0, 21.0};
+
+	@Test
+	void nearestReturnsStopsNearestFirstUpToTheRadius() {
+		StopSpatialIndex index = new StopSpatialIndex(LINE_LATS, LINE_LONS);
+
+		List<StopSpatialIndex.Nearby> nearby = index.nearest(52.0, 21.0, 300, 10);
+
+		assertEquals(List.of(0, 2, 4), stops(nearby));
+		assertEquals(0, nearby.get(0).distance(), 0.001);
+		assertEquals(111.2, nearby.get(1).distance(), 0.5);
+		assertEquals(222.4, nearby.get(2).distance(), 0.5);
+		assertEquals(List.of(0, 2), stops(index.nearest(52.0, 21.0, 222, 10)));
+		assertTrue(index.nearest(51.9, 21.0, 1000, 10).isEmpty());
+	}
+
+	@Test
+	void nearestKeepsOnlyTheNearestStopsUpToTheLimit() {
+		StopSpatialIndex index = new StopSpatialIndex(LINE_LATS, LINE_LONS);
+
+		assertEquals(List.of(3, 5), stops(index.nearest(52.006, 21.0, 10_000, 2)));
+		assertEquals(List.of(4), stops(index.nearest(52.0021, 21.0, 10_000, 1)));
+	}
+
+	@Test
+	void nearestAndWithinMatchAFullScan() {
+		Random random = new Random(42);
+		double[] lats = new double[500];
+		double[] lons = new double[500];
+		for (int stop = 0; stop < lats.length; stop++) {
+			// Coarse coordinates, so that many stops share a value on the splitting axis
+			lats[stop] = 52.0 + random.nextInt(40) * 0.0025;
+			lons[stop] = 20.8 + random.nextInt(40) * 0.0025;
+		}
+		StopSpatialIndex index = new StopSpatialIndex(lats, lons);
+
+		for (int query = 0; query < 50; query++) {
+			double lat = 52.0 + random.nextDouble() * 0.1;
+			double lon = 20.8 + random.nextDouble() * 0.1;
+			int limit = 1 + random.nextInt(30);
+			List<StopSpatialIndex.Nearby> nearby = index.nearest(lat, lon, 2000, limit);
+			List<Double> expected = IntStream.range(0, lats.length)
+					.mapToObj(stop -> distance(lats, lons, stop, lat, lon))
+					.filter(distance -> distance <= 2000)
+					.sorted()
+					.limit(limit)
+					.toList();
+			assertEquals(expected.size(), nearby.size());
+			for (int i = 0; i < nearby.size(); i++) {
+				assertEquals(expected.get(i), nearby.get(i).distance(), 0.001);
+			}
+
+			// Box edges taken from the same grid, so that they pass exactly through stops
+			int south = random.nextInt(40);
+			int west = random.nextInt(40);
+			double minLat = 52.0 + south * 0.0025;
+			double minLon = 20.8 + west * 0.0025;
+			double maxLat = 52.0 + (south + random.nextInt(10)) * 0.0025;
+			double maxLon = 20.8 + (west + random.nextInt(10)) * 0.0025;
+			List<Integer> inside = IntStream.range(0, lats.length)
+					.filter(stop -> lats[stop] >= minLat && lats[stop] <= maxLat
+							&& lons[stop] >= minLon && lons[stop] <= maxLon)
+					.boxed()
+					.toList();
+			assertEquals(inside, sorted(index.within(minLat, minLon, maxLat, maxLon)));
+		}
+	}
+
+	@Test
+	void nearestFindsEveryStopAtTheSameCoordinates() {
+		double[] lats = new double[9];
+		double[] lons = new double[9];
+		Arrays.fill(lats, 52.1);
+		Arrays.fill(lons, 21.0);
+
+		StopSpatialIndex index = new StopSpatialIndex(lats, lons);
+
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8), sorted(stops(index.nearest(52.1, 21.0, 1, 20))));
+		assertEquals(3, index.nearest(52.1, 21.0, 1, 3).size());
+		assertEquals(9, index.within(52.1, 21.0, 52.1, 21.0).size());
+	}
+
+	@Test
+	void withinIncludesStopsOnTheEdgesOfTheBox() {
+		double[] lats = {52.0, 52.0, 52.1, 52.1, 52.05, 52.2};
+		double[] lons = {21.0, 21.1, 21.0, 21.1, 21.05, 21.05};
+		StopSpatialIndex index = new StopSpatialIndex(lats, lons);
+
+		assertEquals(List.of(0, 1, 2, 3, 4), sorted(index.within(52.0, 21.0, 52.1, 21.1)));
+		assertEquals(List.of(0, 2), sorted(index.within(52.0, 21.0, 52.1, 21.0)));
+		assertEquals(List.of(4, 5), sorted(index.within(52.05, 21.05, 52.3, 21.05)));
+		assertTrue(index.within(52.01, 21.01, 52.04, 21.04).isEmpty());
+	}
+
+	// Distance on the plane the index projects onto, around the mean latitude of all stops
+	private double distance(double[] lats, double[] lons, int stop, double lat, double lon) {
+		double metersPerDegreeLat = Math.toRadians(1) * 6_371_000;
+		double metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(Arrays.stream(lats).average()
+				.orElseThrow()));
+		return Math.hypot((lons[stop] - lon) * metersPerDegreeLon, (lats[stop] - lat) * metersPerDegreeLat);
+	}
+
+	private List<Integer> stops(List<StopSpatialIndex.Nearby> nearby) {
+		return nearby.stream().map(StopSpatialIndex.Nearby::stop).toList();
+	}
+
+	private List<Integer> sorted(List<Integer> stops) {
+		return stops.stream().sorted(Comparator.naturalOrder()).toList();
+	}
+}
@@ -0,0 +1,156 @@
+package io.github.ktrzaskoma.service;
+
+import io.github.ktrzaskoma.repository.TimetableLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stands in for the database when a Timetable is built in a test. Stops, routes and trips get keys in the order
+// they are added, a reference to an id that was never added gets a key no row has.
+final class TimetableFixture extends TimetableLoader {
+
+	// A Tuesday, the day queries are made for unless a test says otherwise
+	static final LocalDate DAY = LocalDate.of(2026, 10, 20);
+
+	private static final long UNKNOWN_KEY = -1;
+
+	private final Map<String, Long> stopKeys = new HashMap<>();
+	private final Map<String, Long> routeKeys = new HashMap<>();
+	private final Map<String, Long> tripKeys = new HashMap<>();
+	private final List<StopRow> stops = new ArrayList<>();
+	private final List<RouteRow> routes = new ArrayList<>();
+	private final List<TripRow> trips = new ArrayList<>();
+	private final List<StopTimeRow> stopTimes = new ArrayList<>();
+	private final Map<String, List<LocalDate>> services = new LinkedHashMap<>();
+	private final List<TransferRow> transfers = new ArrayList<>();
+
+	TimetableFixture() {
+		super(new JdbcTemplate());
+	}
+
+	TimetableFixture stop(String stopId, double lat, double lon) {
+		return stop(stopId, stopId, lat, lon);
+	}
+
+	TimetableFixture stop(String stopId, String stopName, double lat, double lon) {
+		long key = stops.size() + 1;
+		stopKeys.put(stopId, key);
+		stops.add(new StopRow(key, stopId, stopName, lat, lon));
+		return this;
+	}
+
+	TimetableFixture route(String routeId) {
+		long key = routes.size() + 1;
+		routeKeys.put(routeId, key);
+		routes.add(new RouteRow(key, routeId));
+		return this;
+	}
+
+	// Calls are "STOP HH:MM" with the arrival equal to the departure, or "STOP HH:MM HH:MM", hours may pass 24
+	TimetableFixture trip(String tripId, String routeId, String serviceId, String... calls) {
+		long key = trips.size() + 1;
+		tripKeys.put(tripId, key);
+		trips.add(new TripRow(key, tripId, routeKeys.getOrDefault(routeId, UNKNOWN_KEY), serviceId));
+		return stopTimes(tripId, calls);
+	}
+
+	// Stop times of a trip, which does not have to exist
+	TimetableFixture stopTimes(String tripId, String... calls) {
+		long tripKey = tripKeys.getOrDefault(tripId, UNKNOWN_KEY);
+		for (int sequence = 0; sequence < calls.length; sequence++) {
+			String[] parts = calls[sequence].split(" ");
+			int arrival = time(parts[1]);
+			int departure = parts.length > 2 ? time(parts[2]) : arrival;
+			long stopKey = stopKeys.getOrDefault(parts[0], UNKNOWN_KEY);
+			stopTimes.add(new StopTimeRow(tripKey, stopKey, sequence + 1, arrival, departure));
+		}
+		return this;
+	}
+
+	TimetableFixture service(String serviceId, LocalDate... dates) {
+		services.computeIfAbsent(serviceId, key -> new ArrayList<>()).addAll(List.of(dates));
+		return this;
+	}
+
+	// A minimum transfer time of -1 stands for an empty min_transfer_time
+	TimetableFixture transfer(String fromStopId, String toStopId, int transferType, int minTransferTime) {
+		transfers.add(new TransferRow(fromStopId, toStopId, transferType, minTransferTime));
+		return this;
+	}
+
+	Timetable build() {
+		return build(120);
+	}
+
+	Timetable build(int defaultTransferTime) {
+		return Timetable.load(1, List.of(1L), this, defaultTransferTime);
+	}
+
+	static int time(String time) {
+		String[] parts = time.split(":");
+		return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60;
+	}
+
+	@Override
+	public void readStops(List<Long> versionIds, StopHandler handler) {
+		stops.forEach(row -> handler.stop(row.key(), row.stopId(), row.stopName(), row.lat(), row.lon(), 0));
+	}
+
+	@Override
+	public void readRoutes(List<Long> versionIds, RouteHandler handler) {
+		routes.forEach(row -> handler.route(row.key(), row.routeId(), row.routeId(), row.routeId() + " line", 3));
+	}
+
+	@Override
+	public void readTrips(List<Long> versionIds, TripHandler handler) {
+		trips.forEach(row -> handler.trip(row.key(), row.tripId(), row.routeKey(), row.serviceId(), null, 0, 0));
+	}
+
+	// Ordered like the query, the rows of a trip together and in sequence
+	@Override
+	public void readStopTimes(List<Long> versionIds, StopTimeHandler handler) {
+		stopTimes.stream()
+				.sorted(Comparator.comparingLong(StopTimeRow::tripKey).thenComparingInt(StopTimeRow::sequence))
+				.forEach(row -> handler.stopTime(row.tripKey(), row.stopKey(), row.sequence(), row.arrival(),
+						row.departure()));
+	}
+
+	@Override
+	public void readServiceCalendars(long uploadId, ServiceCalendarHandler handler) {
+		services.forEach((serviceId, dates) -> {
+			LocalDate firstDate = dates.stream().min(LocalDate::compareTo).orElseThrow();
+			BitSet days = new BitSet();
+			dates.forEach(date -> days.set((int) ChronoUnit.DAYS.between(firstDate, date)));
+			handler.serviceCalendar(serviceId, firstDate, days.toByteArray());
+		});
+	}
+
+	@Override
+	public void readTransfers(List<Long> versionIds, TransferHandler handler) {
+		transfers.forEach(row -> handler.transfer(row.fromStopId(), row.toStopId(), row.transferType(),
+				row.minTransferTime()));
+	}
+
+	private record StopRow(long key, String stopId, String stopName, double lat, double lon) {
+	}
+
+	private record RouteRow(long key, String routeId) {
+	}
+
+	private record TripRow(long key, String tripId, long routeKey, String serviceId) {
+	}
+
+	private record StopTimeRow(long tripKey, long stopKey, int sequence, int arrival, int departure) {
+	}
+
+	private record TransferRow(String fromStopId, String toStopId, int transferType, int minTransferTime) {
+	}
+}